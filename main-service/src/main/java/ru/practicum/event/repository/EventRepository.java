@@ -2,8 +2,10 @@ package ru.practicum.event.repository;
 
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.event.model.Event;
 import ru.practicum.event.model.EventState;
 
@@ -58,4 +60,21 @@ public interface EventRepository extends JpaRepository<Event, Long> {
     boolean existsByCategoryId(Long categoryId);
 
     Optional<Event> findByIdAndState(Long eventId, EventState state);
+
+    /**
+     * Запоминает просмотр события с IP и увеличивает views, если с этого IP событие ещё не просматривали.
+     *
+     * @return 1, если просмотр засчитан
+     */
+    @Transactional
+    @Modifying
+    @Query(value = """
+            WITH view AS (
+                INSERT INTO event_views (event_id, ip) VALUES (:eventId, :ip)
+                ON CONFLICT DO NOTHING
+                RETURNING event_id
+            )
+            UPDATE events SET views = views + 1 WHERE id IN (SELECT event_id FROM view)
+            """, nativeQuery = true)
+    int countUniqueView(@Param("eventId") Long eventId, @Param("ip") String ip);
 }
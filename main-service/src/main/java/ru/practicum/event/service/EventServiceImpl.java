@@ -4,14 +4,12 @@ import jakarta.servlet.http.HttpServletRequest;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.PageRequest;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import ru.practicum.StatClient;
 import ru.practicum.category.model.Category;
 import ru.practicum.category.repository.CategoryRepository;
 import ru.practicum.dto.HitDto;
-import ru.practicum.dto.StatDto;
 import ru.practicum.event.dto.*;
 import ru.practicum.event.mapper.EventMapper;
 import ru.practicum.event.model.Event;
@@ -291,41 +289,34 @@ public class EventServiceImpl implements EventService {
         Event event = eventRepository.findByIdAndState(eventId, EventState.PUBLISHED)
                 .orElseThrow(() -> new EventNotFoundException(eventId));
 
-        int previousHits = getHits(request);
-        log.info("Получаем текущее количество просмотров: {}", previousHits);
-        sendHit(request, "ewm-main-service");
-
-        int newHits = getHits(request);
-        log.info("Получаем обновлённое количество просмотров: {}", newHits);
-
-        if (newHits > previousHits) {
+        if (countView(eventId, request)) {
             event.setViews(event.getViews() + 1);
-            eventRepository.save(event);
         }
 
         return toEventFullDto(event);
     }
 
+    /**
+     * Hit уходит в очередь отправки клиента статистики, а уникальность просмотра проверяется по IP в таблице
+     * event_views, поэтому запрос не ждёт stat-server.
+     *
+     * @return true, если просмотр засчитан
+     */
+    private boolean countView(Long eventId, HttpServletRequest request) {
+        sendHit(request, "ewm-main-service");
+        return eventRepository.countUniqueView(eventId, request.getRemoteAddr()) > 0;
+    }
+
     private void sendHit(HttpServletRequest request, String appName) {
-        statClient.addHit(HitDto.builder()
+        statClient.addHit(toHitDto(request, appName));
+    }
+
+    private HitDto toHitDto(HttpServletRequest request, String appName) {
+        return HitDto.builder()
                 .app(appName)
                 .uri(request.getRequestURI())
                 .ip(request.getRemoteAddr())
                 .timestamp(LocalDateTime.now().format(formatter))
-                .build());
-    }
-
-    private int getHits(HttpServletRequest request) {
-        ResponseEntity<StatDto[]> response = statClient.getStats(
-                LocalDateTime.now().minusYears(100).format(formatter),
-                LocalDateTime.now().format(formatter),
-                new String[]{request.getRequestURI()},
-                true
-        );
-
-        if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null && response.getBody().length > 0) {
-            return response.getBody()[0].getHits();
-        }
-        return 0;
+                .build();
     }
 }
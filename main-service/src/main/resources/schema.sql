@@ -42,6 +42,13 @@ CREATE TABLE IF NOT EXISTS events (
     CONSTRAINT fk_initiator FOREIGN KEY (initiator_id) REFERENCES users(id)
 );
 
+CREATE TABLE IF NOT EXISTS event_views (
+    event_id BIGINT NOT NULL,
+    ip VARCHAR(45) NOT NULL,
+    CONSTRAINT pk_event_view PRIMARY KEY (event_id, ip),
+    CONSTRAINT fk_event_view_event FOREIGN KEY (event_id) REFERENCES events(id)
+);
+
 CREATE TABLE IF NOT EXISTS compilations (
     id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
     pinned BOOLEAN,
@@ -0,0 +1,191 @@
+package ru.practicum;
+
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.dto.HitDto;
+import ru.practicum.protocol.HitProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Отправка hit'ов в stat-server по бинарному протоколу {@link HitProtocol} через одно постоянное соединение.
+ * Соединение открывает и пакеты пишет поток stat-client-binary-writer, поэтому send не блокирует вызывающий
+ * поток. Пакеты пишутся без ожидания подтверждений, подтверждения читает отдельный поток и завершает futures
+ * в порядке отправки. Если max-in-flight пакетов ещё не подтверждены, send сразу возвращает future с ошибкой.
+ * При обрыве соединения ожидающие пакеты завершаются ошибкой, а следующий пакет открывает новое соединение.
+ */
+@Slf4j
+class BinaryHitTransport implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String host;
+    private final int port;
+    private final int timeoutMs;
+    private final Semaphore inFlight;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "stat-client-binary-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Connection connection;
+    private long nextSeq;
+    private boolean closed;
+
+    BinaryHitTransport(String host, int port, int timeoutMs, int maxInFlight) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMs = timeoutMs;
+        this.inFlight = new Semaphore(maxInFlight);
+    }
+
+    /**
+     * @return future с количеством принятых сервером hit'ов
+     */
+    CompletableFuture<Integer> send(List<HitDto> hits) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        if (!inFlight.tryAcquire()) {
+            result.completeExceptionally(new IOException("Stat-server не подтверждает пакеты hit'ов"));
+            return result;
+        }
+        result.whenComplete((accepted, e) -> inFlight.release());
+        try {
+            writer.execute(() -> write(hits, result));
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(new IOException("Клиент статистики остановлен"));
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        writer.shutdown();
+        synchronized (this) {
+            closed = true;
+            if (connection != null) {
+                connection.close(new IOException("Клиент статистики остановлен"));
+            }
+        }
+    }
+
+    private synchronized void write(List<HitDto> hits, CompletableFuture<Integer> result) {
+        Connection current = null;
+        try {
+            current = connect();
+            long seq = nextSeq++;
+            byte[] frame = current.encoder.encodeHits(seq, hits);
+            current.pending.add(new Pending(seq, result));
+            current.out.write(frame);
+            current.out.flush();
+        } catch (IOException | RuntimeException e) {
+            result.completeExceptionally(e);
+            if (current != null && !(e instanceof IllegalArgumentException)) {
+                current.close(e);
+            }
+        }
+    }
+
+    private Connection connect() throws IOException {
+        if (closed) {
+            throw new IOException("Клиент статистики остановлен");
+        }
+        if (connection != null && !connection.broken) {
+            return connection;
+        }
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setTcpNoDelay(true);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            out.writeInt(HitProtocol.MAGIC);
+            out.writeInt(HitProtocol.VERSION);
+            out.flush();
+            socket.setSoTimeout(timeoutMs);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            if (in.readInt() != HitProtocol.MAGIC || in.readInt() != HitProtocol.VERSION) {
+                throw new IOException("Stat-server " + host + ":" + port + " не поддерживает протокол версии " +
+                        HitProtocol.VERSION);
+            }
+            socket.setSoTimeout(0);
+            connection = new Connection(socket, in, out);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+        Thread reader = new Thread(connection::readResponses, "stat-client-binary-reader");
+        reader.setDaemon(true);
+        reader.start();
+        log.info("Открыто бинарное соединение с stat-server {}:{}", host, port);
+        return connection;
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private final HitProtocol.Encoder encoder = new HitProtocol.Encoder();
+        private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+        private volatile boolean broken;
+
+        private Connection(Socket socket, DataInputStream in, DataOutputStream out) {
+            this.socket = socket;
+            this.in = in;
+            this.out = out;
+        }
+
+        private void readResponses() {
+            try {
+                while (true) {
+                    byte[] payload = new byte[in.readInt()];
+                    in.readFully(payload);
+                    HitProtocol.Response response = HitProtocol.decodeResponse(ByteBuffer.wrap(payload));
+                    Pending next = pending.poll();
+                    if (next == null || next.seq != response.getSeq()) {
+                        throw new IOException("Подтверждение пакета " + response.getSeq() + " не по порядку");
+                    }
+                    if (response.isError()) {
+                        next.result.completeExceptionally(new StatServerRejectedException(response.getStatus(),
+                                response.getMessage()));
+                    } else {
+                        next.result.complete(response.getAccepted());
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                close(e);
+            }
+        }
+
+        private void close(Exception cause) {
+            broken = true;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Ошибка закрытия бинарного соединения", e);
+            }
+            for (Pending next = pending.poll(); next != null; next = pending.poll()) {
+                next.result.completeExceptionally(cause);
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class Pending {
+        private final long seq;
+        private final CompletableFuture<Integer> result;
+    }
+}
\ No newline at end of file
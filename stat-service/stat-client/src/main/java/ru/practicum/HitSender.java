@@ -0,0 +1,318 @@
+package ru.practicum;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.dto.HitDto;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Фоновая отправка hit'ов пакетами. Hit'ы копятся в ограниченной очереди, поток stat-client-sender отправляет
+ * их, когда набралось batch-size hit'ов или с первого hit'а пакета прошло flush-interval.
+ * <p>
+ * Если stat-server недоступен, пакеты дописываются в файл строками JSON, а отправка повторяется раз
+ * в retry-interval. Hit'ы, не поместившиеся в очередь, попадают в такой же по размеру список переполнения,
+ * который поток отправки дописывает в файл; поток, добавляющий hit, на диск не пишет. Если переполнен
+ * и этот список, hit отбрасывается и учитывается в {@link #getDropped()}. Когда сервер снова принимает
+ * пакеты, файл переименовывается в .replay и отправляется по частям между обычными пакетами. Hit'ы, отправленные из .replay до остановки
+ * клиента, после перезапуска отправятся повторно.
+ */
+@Slf4j
+class HitSender implements Closeable {
+    private static final int REPLAY_BATCHES_PER_ROUND = 10;
+
+    private final BatchSender batchSender;
+    private final ObjectMapper objectMapper;
+    private final BlockingQueue<HitDto> queue;
+    private final BlockingQueue<HitDto> overflowQueue;
+    private final LongAdder dropped = new LongAdder();
+    private final Path spillFile;
+    private final Path replayFile;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final long retryIntervalMs;
+    private final long closeTimeoutMs;
+    private final Object spillLock = new Object();
+    private final List<HitDto> replayBatch = new ArrayList<>();
+    private final Thread thread;
+    private volatile boolean running = true;
+    private volatile boolean spilled;
+    private volatile boolean overflow;
+    private volatile boolean dropping;
+    private long retryAt;
+    private BufferedReader replayReader;
+
+    HitSender(BatchSender batchSender, ObjectMapper objectMapper, Path spillFile, int capacity, int batchSize,
+              long flushIntervalMs, long retryIntervalMs, long closeTimeoutMs) {
+        this.batchSender = batchSender;
+        this.objectMapper = objectMapper;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowQueue = new ArrayBlockingQueue<>(capacity);
+        this.spillFile = spillFile;
+        this.replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.retryIntervalMs = retryIntervalMs;
+        this.closeTimeoutMs = closeTimeoutMs;
+        this.spilled = Files.exists(spillFile) || Files.exists(replayFile);
+        this.thread = new Thread(this::run, "stat-client-sender");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    void add(HitDto hit) {
+        if (queue.offer(hit)) {
+            overflow = false;
+            dropping = false;
+            return;
+        }
+        if (!overflow) {
+            overflow = true;
+            log.warn("Очередь отправки hit'ов переполнена, hit'ы сохраняются в {}", spillFile);
+        }
+        if (overflowQueue.offer(hit)) {
+            return;
+        }
+        dropped.increment();
+        if (!dropping) {
+            dropping = true;
+            log.error("Очередь отправки и список переполнения заполнены, hit'ы отбрасываются");
+        }
+    }
+
+    /**
+     * @return сколько hit'ов отброшено из-за переполнения с момента запуска
+     */
+    long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Отправляет оставшиеся в очереди hit'ы; то, что не успело уйти за close-timeout, сохраняется в файл.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            thread.join(closeTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<HitDto> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        overflowQueue.drainTo(rest);
+        if (!rest.isEmpty()) {
+            spill(rest);
+        }
+    }
+
+    private void run() {
+        List<HitDto> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                HitDto first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    fill(batch);
+                    deliver(batch);
+                    batch.clear();
+                }
+                spillOverflow();
+                replay();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (RuntimeException e) {
+                log.error("Ошибка фоновой отправки hit'ов", e);
+            }
+        }
+        closeReplay();
+    }
+
+    private void fill(List<HitDto> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        while (batch.size() < batchSize) {
+            queue.drainTo(batch, batchSize - batch.size());
+            long wait = deadline - System.nanoTime();
+            if (batch.size() >= batchSize || wait <= 0 || !running) {
+                return;
+            }
+            HitDto next = queue.poll(wait, TimeUnit.NANOSECONDS);
+            if (next == null) {
+                return;
+            }
+            batch.add(next);
+        }
+    }
+
+    private void spillOverflow() {
+        List<HitDto> hits = new ArrayList<>();
+        overflowQueue.drainTo(hits);
+        if (!hits.isEmpty()) {
+            spill(hits);
+        }
+    }
+
+    private void deliver(List<HitDto> batch) {
+        if (System.currentTimeMillis() < retryAt || !send(batch)) {
+            spill(batch);
+        }
+    }
+
+    /**
+     * @return false, если пакет нужно отправить позже
+     */
+    private boolean send(List<HitDto> batch) {
+        try {
+            batchSender.send(batch);
+            if (retryAt != 0) {
+                log.info("StatServer снова принимает hit'ы");
+                retryAt = 0;
+            }
+            return true;
+        } catch (StatServerRejectedException e) {
+            if (e.getStatus() / 100 == 4) {
+                log.error("Пакет из {} hit'ов отброшен: {}", batch.size(), e.getMessage());
+                return true;
+            }
+            return postpone(batch, e);
+        } catch (IllegalArgumentException e) {
+            log.error("Пакет из {} hit'ов отброшен: {}", batch.size(), e.getMessage());
+            return true;
+        } catch (Exception e) {
+            return postpone(batch, e);
+        }
+    }
+
+    private boolean postpone(List<HitDto> batch, Exception e) {
+        if (retryAt == 0) {
+            log.warn("StatServer недоступен, hit'ы сохраняются в {} до повторной попытки", spillFile, e);
+        } else {
+            log.debug("StatServer по-прежнему недоступен, пакет из {} hit'ов отложен: {}", batch.size(),
+                    e.getMessage());
+        }
+        retryAt = System.currentTimeMillis() + retryIntervalMs;
+        return false;
+    }
+
+    private void spill(List<HitDto> hits) {
+        synchronized (spillLock) {
+            try {
+                Path parent = spillFile.toAbsolutePath().getParent();
+                if (parent != null) {
+                    Files.createDirectories(parent);
+                }
+                try (BufferedWriter writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (HitDto hit : hits) {
+                        writer.write(objectMapper.writeValueAsString(hit));
+                        writer.newLine();
+                    }
+                }
+                spilled = true;
+            } catch (IOException e) {
+                log.error("Не удалось сохранить {} hit'ов в {}, hit'ы потеряны", hits.size(), spillFile, e);
+            }
+        }
+    }
+
+    /**
+     * Отправляет несколько пакетов из сохранённых hit'ов, не задерживая надолго новые.
+     */
+    private void replay() {
+        if (!spilled || !running || System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        try {
+            if (replayReader == null && !openReplay()) {
+                return;
+            }
+            for (int i = 0; i < REPLAY_BATCHES_PER_ROUND; i++) {
+                if (replayBatch.isEmpty() && !readReplayBatch()) {
+                    finishReplay();
+                    return;
+                }
+                if (!send(replayBatch)) {
+                    return;
+                }
+                replayBatch.clear();
+            }
+        } catch (IOException e) {
+            log.error("Ошибка чтения сохранённых hit'ов из {}", replayFile, e);
+            closeReplay();
+            retryAt = System.currentTimeMillis() + retryIntervalMs;
+        }
+    }
+
+    private boolean openReplay() throws IOException {
+        synchronized (spillLock) {
+            if (!Files.exists(replayFile)) {
+                if (!Files.exists(spillFile)) {
+                    spilled = false;
+                    return false;
+                }
+                Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        log.info("Повторная отправка сохранённых hit'ов из {}", replayFile);
+        replayReader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8);
+        return true;
+    }
+
+    private boolean readReplayBatch() throws IOException {
+        String line;
+        while (replayBatch.size() < batchSize && (line = replayReader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                replayBatch.add(objectMapper.readValue(line, HitDto.class));
+            } catch (IOException e) {
+                // строка, недописанная при аварийной остановке
+                log.warn("Пропущена повреждённая строка в {}: {}", replayFile, e.getMessage());
+            }
+        }
+        return !replayBatch.isEmpty();
+    }
+
+    private void finishReplay() throws IOException {
+        closeReplay();
+        synchronized (spillLock) {
+            Files.delete(replayFile);
+            spilled = Files.exists(spillFile);
+        }
+        log.info("Сохранённые hit'ы отправлены");
+    }
+
+    private void closeReplay() {
+        replayBatch.clear();
+        if (replayReader == null) {
+            return;
+        }
+        try {
+            replayReader.close();
+        } catch (IOException e) {
+            log.debug("Ошибка закрытия {}", replayFile, e);
+        }
+        replayReader = null;
+    }
+
+    @FunctionalInterface
+    interface BatchSender {
+        void send(List<HitDto> hits) throws Exception;
+    }
+}
\ No newline at end of file
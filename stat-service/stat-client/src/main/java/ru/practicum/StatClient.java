@@ -1,42 +1,216 @@
 package ru.practicum;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import ru.practicum.dto.HitDto;
 import ru.practicum.dto.StatDto;
+import ru.practicum.dto.StatQueryDto;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Клиент stat-server. Синхронные и асинхронные методы работают через один неблокирующий {@link HttpClient}
+ * с пулом keep-alive соединений: асинхронные не занимают поток вызывающего на время запроса. HttpClient
+ * не ограничивает число соединений с сервером, поэтому асинхронных запросов одновременно выполняется
+ * не больше max-connections, остальные ждут в очереди.
+ * <p>
+ * {@link #addHit} только ставит hit в очередь {@link HitSender}, который отправляет hit'ы пакетами в фоне.
+ */
 @Slf4j
 @Component
 public class StatClient {
-    private final RestTemplate rest;
+    /**
+     * Больший список URI не помещается в строку запроса GET /stats и отправляется в теле POST /stats/query.
+     */
+    private static final int MAX_QUERY_STRING_URIS = 100;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Value("${stat-server.url}")
     private String statServerUrl;
 
-    public StatClient() {
-        this.rest = new RestTemplate();
+    @Value("${stat-server.connect-timeout-ms:1000}")
+    private int connectTimeoutMs;
+
+    @Value("${stat-server.read-timeout-ms:3000}")
+    private int readTimeoutMs;
+
+    @Value("${stat-server.max-connections:32}")
+    private int maxConnections;
+
+    @Value("${stat-server.sender.capacity:10000}")
+    private int senderCapacity;
+
+    @Value("${stat-server.sender.batch-size:500}")
+    private int senderBatchSize;
+
+    @Value("${stat-server.sender.flush-interval-ms:1000}")
+    private long senderFlushIntervalMs;
+
+    @Value("${stat-server.sender.retry-interval-ms:5000}")
+    private long senderRetryIntervalMs;
+
+    @Value("${stat-server.sender.spill-file:data/stat-client-spill.jsonl}")
+    private String senderSpillFile;
+
+    @Value("${stat-server.transport:http}")
+    private String transport;
+
+    @Value("${stat-server.binary.port:9091}")
+    private int binaryPort;
+
+    @Value("${stat-server.binary.timeout-ms:1000}")
+    private int binaryTimeoutMs;
+
+    @Value("${stat-server.binary.max-in-flight:64}")
+    private int binaryMaxInFlight;
+
+    private final Queue<Runnable> waitingRequests = new ConcurrentLinkedQueue<>();
+    private HttpClient httpClient;
+    private Semaphore connections;
+    private RestTemplate rest;
+    private BinaryHitTransport binaryTransport;
+    private HitSender hitSender;
+
+    @PostConstruct
+    public void init() {
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        rest = new RestTemplate(requestFactory);
+        connections = new Semaphore(maxConnections);
+        if ("binary".equals(transport)) {
+            binaryTransport = new BinaryHitTransport(URI.create(statServerUrl).getHost(), binaryPort,
+                    binaryTimeoutMs, binaryMaxInFlight);
+            log.info("Hit'ы отправляются в StatServer по бинарному протоколу, порт {}", binaryPort);
+        }
+        // при остановке очередь дописывается не дольше одного интервала и двух запросов, остальное — в файл
+        long closeTimeoutMs = senderFlushIntervalMs + 2L * readTimeoutMs;
+        hitSender = new HitSender(this::postHits, objectMapper, Path.of(senderSpillFile), senderCapacity,
+                senderBatchSize, senderFlushIntervalMs, senderRetryIntervalMs, closeTimeoutMs);
     }
 
+    @PreDestroy
+    public void close() {
+        hitSender.close();
+        if (binaryTransport != null) {
+            binaryTransport.close();
+        }
+        httpClient.close();
+    }
+
+    /**
+     * Ставит hit в очередь фоновой отправки и сразу возвращает управление.
+     */
     public void addHit(HitDto hitDto) {
-        HttpEntity<HitDto> requestEntity = new HttpEntity<>(hitDto);
-        log.info("Отправка POST-запроса в StatServer: {}", hitDto);
+        log.debug("Hit поставлен в очередь отправки в StatServer: {}", hitDto);
+        hitSender.add(hitDto);
+    }
+
+    /**
+     * Отправляет hit, не дожидаясь ответа. Ошибка логируется и завершает future.
+     */
+    public CompletableFuture<Void> addHitAsync(HitDto hitDto) {
+        CompletableFuture<Void> result;
+        if (binaryTransport != null) {
+            log.debug("Асинхронная отправка hit'а в StatServer по бинарному протоколу: {}", hitDto);
+            result = binaryTransport.send(List.of(hitDto)).thenApply(accepted -> null);
+        } else {
+            log.debug("Асинхронная отправка POST-запроса в StatServer: {}", hitDto);
+            result = sendAsync(jsonRequest("/hit", hitDto), HttpResponse.BodyHandlers.discarding())
+                    .thenApply(body -> null);
+        }
+        return result.whenComplete((ignored, e) -> {
+            if (e != null) {
+                log.error("Ошибка при асинхронной отправке hit'а в StatServer", e);
+            }
+        });
+    }
+
+    public void addHits(List<HitDto> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        if (binaryTransport != null) {
+            sendBinary(hits);
+            return;
+        }
+        log.info("Отправка POST-запроса в StatServer: {} hit'ов", hits.size());
         try {
-            rest.exchange(statServerUrl + "/hit", HttpMethod.POST, requestEntity, Void.class);
+            rest.exchange(statServerUrl + "/hits", HttpMethod.POST, new HttpEntity<>(hits), Void.class);
             log.info("POST-запрос успешно выполнен.");
         } catch (Exception e) {
             log.error("Ошибка при отправке POST-запроса в StatServer", e);
         }
     }
 
+    /**
+     * Синхронная отправка пакета из потока {@link HitSender}: ошибка означает, что пакет нужно отправить позже.
+     */
+    private void postHits(List<HitDto> hits) throws Exception {
+        if (binaryTransport != null) {
+            try {
+                binaryTransport.send(hits).get(readTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            }
+            return;
+        }
+        try {
+            rest.exchange(statServerUrl + "/hits", HttpMethod.POST, new HttpEntity<>(hits), Void.class);
+        } catch (HttpClientErrorException e) {
+            throw new StatServerRejectedException(e.getStatusCode().value(), e.getResponseBodyAsString());
+        }
+        log.debug("Отправлен пакет из {} hit'ов", hits.size());
+    }
+
+    private void sendBinary(List<HitDto> hits) {
+        log.debug("Отправка {} hit'ов в StatServer по бинарному протоколу", hits.size());
+        binaryTransport.send(hits).whenComplete((accepted, e) -> {
+            if (e != null) {
+                log.error("Ошибка при отправке {} hit'ов в StatServer по бинарному протоколу", hits.size(), e);
+            }
+        });
+    }
+
     public ResponseEntity<StatDto[]> getStats(String start, String end, String[] uris, boolean unique) {
+        if (uris != null && uris.length > MAX_QUERY_STRING_URIS) {
+            return queryStats(start, end, List.of(uris), unique);
+        }
         Map<String, Object> parameters = new HashMap<>();
         parameters.put("start", start);
         parameters.put("end", end);
@@ -63,4 +237,117 @@ public class StatClient {
             return ResponseEntity.status(500).body(null);
         }
     }
+
+    public ResponseEntity<StatDto[]> queryStats(String start, String end, List<String> uris, boolean unique) {
+        StatQueryDto query = StatQueryDto.builder()
+                .start(start)
+                .end(end)
+                .uris(uris)
+                .unique(unique)
+                .build();
+        log.info("Отправка POST-запроса в StatServer: {}", query);
+
+        try {
+            ResponseEntity<StatDto[]> response = rest.postForEntity(statServerUrl + "/stats/query", query,
+                    StatDto[].class);
+            log.info("Ответ от StatServer: status={}, строк={}", response.getStatusCode(),
+                    response.getBody() == null ? 0 : response.getBody().length);
+
+            return response;
+        } catch (Exception e) {
+            log.error("Ошибка при отправке POST-запроса в StatServer", e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+
+    /**
+     * Асинхронный аналог {@link #getStats}: future завершается ошибкой, если stat-server недоступен
+     * или ответил не 2xx.
+     */
+    public CompletableFuture<StatDto[]> getStatsAsync(String start, String end, String[] uris, boolean unique) {
+        HttpRequest request;
+        if (uris != null && uris.length > MAX_QUERY_STRING_URIS) {
+            request = jsonRequest("/stats/query", StatQueryDto.builder()
+                    .start(start)
+                    .end(end)
+                    .uris(List.of(uris))
+                    .unique(unique)
+                    .build());
+        } else {
+            StringBuilder path = new StringBuilder(statServerUrl)
+                    .append("/stats?start=").append(encode(start))
+                    .append("&end=").append(encode(end))
+                    .append("&unique=").append(unique);
+            if (uris != null) {
+                for (String uri : uris) {
+                    path.append("&uris=").append(encode(uri));
+                }
+            }
+            request = HttpRequest.newBuilder(URI.create(path.toString()))
+                    .timeout(Duration.ofMillis(readTimeoutMs))
+                    .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                    .GET()
+                    .build();
+        }
+        log.debug("Асинхронный запрос статистики в StatServer: {}", request.uri());
+        return sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(body -> {
+                    try {
+                        return objectMapper.readValue(body, StatDto[].class);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                })
+                .whenComplete((stats, e) -> {
+                    if (e != null) {
+                        log.error("Ошибка при асинхронном запросе статистики в StatServer", e);
+                    }
+                });
+    }
+
+    private <T> CompletableFuture<T> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        waitingRequests.add(() -> httpClient.sendAsync(request, bodyHandler).whenComplete((response, e) -> {
+            connections.release();
+            startWaitingRequests();
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else if (response.statusCode() / 100 != 2) {
+                result.completeExceptionally(new IllegalStateException("StatServer ответил " +
+                        response.statusCode() + " на " + request.method() + " " + request.uri().getPath()));
+            } else {
+                result.complete(response.body());
+            }
+        }));
+        startWaitingRequests();
+        return result;
+    }
+
+    private void startWaitingRequests() {
+        while (!waitingRequests.isEmpty() && connections.tryAcquire()) {
+            Runnable next = waitingRequests.poll();
+            if (next == null) {
+                connections.release();
+                return;
+            }
+            next.run();
+        }
+    }
+
+    private HttpRequest jsonRequest(String path, Object body) {
+        try {
+            return HttpRequest.newBuilder(URI.create(statServerUrl + path))
+                    .timeout(Duration.ofMillis(readTimeoutMs))
+                    .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                    .header(HttpHeaders.ACCEPT, MediaType.APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                    .build();
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Не удалось сериализовать запрос в StatServer", e);
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package ru.practicum;
+
+import lombok.Getter;
+
+/**
+ * Stat-server получил пакет hit'ов, но отказался его принять. Для кодов 4xx повторная отправка бессмысленна.
+ */
+@Getter
+class StatServerRejectedException extends RuntimeException {
+    private final int status;
+
+    StatServerRejectedException(int status, String message) {
+        super("Stat-server отклонил пакет hit'ов: " + status + " " + message);
+        this.status = status;
+    }
+}
\ No newline at end of file
@@ -14,6 +14,10 @@ public class HitDto {
     private String uri;
     private String ip;
     private String timestamp;
+    /**
+     * Время ответа в миллисекундах, необязательное.
+     */
+    private Long responseTimeMs;
 
     @Override
     public String toString() {
@@ -22,6 +26,7 @@ public class HitDto {
                 ", uri='" + uri + '\'' +
                 ", ip='" + ip + '\'' +
                 ", timestamp='" + timestamp + '\'' +
+                ", responseTimeMs=" + responseTimeMs +
                 '}';
     }
 }
\ No newline at end of file
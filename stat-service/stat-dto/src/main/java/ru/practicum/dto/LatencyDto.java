@@ -0,0 +1,36 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Перцентили времени ответа в миллисекундах. Если в диапазоне нет замеров, count равен 0, а перцентили null.
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LatencyDto {
+    private String uri;
+    private long count;
+    private Long p50;
+    private Long p90;
+    private Long p99;
+    private Long max;
+
+    @Override
+    public String toString() {
+        return "LatencyDto{" +
+                "uri='" + uri + '\'' +
+                ", count=" + count +
+                ", p50=" + p50 +
+                ", p90=" + p90 +
+                ", p99=" + p99 +
+                ", max=" + max +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,38 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.List;
+
+/**
+ * Тело POST /stats/query: те же параметры, что у GET /stats, но список URI передаётся в теле
+ * и может содержать тысячи элементов.
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class StatQueryDto {
+    private String start;
+    private String end;
+    private List<String> uris;
+    private boolean unique;
+    @Builder.Default
+    private String precision = "exact";
+
+    @Override
+    public String toString() {
+        return "StatQueryDto{" +
+                "start='" + start + '\'' +
+                ", end='" + end + '\'' +
+                ", uris=" + (uris == null ? "null" : uris.size() + " шт.") +
+                ", unique=" + unique +
+                ", precision='" + precision + '\'' +
+                '}';
+    }
+}
\ No newline at end of file
@@ -0,0 +1,29 @@
+package ru.practicum.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TimelineDto {
+    private String app;
+    private String uri;
+    private String bucket;
+    private int hits;
+
+    @Override
+    public String toString() {
+        return "TimelineDto{" +
+                "app='" + app + '\'' +
+                ", uri='" + uri + '\'' +
+                ", bucket='" + bucket + '\'' +
+                ", hits=" + hits +
+                '}';
+    }
+}
\ No newline at end of file
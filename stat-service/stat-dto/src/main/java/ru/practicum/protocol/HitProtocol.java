@@ -0,0 +1,254 @@
+package ru.practicum.protocol;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.practicum.dto.HitDto;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Бинарный протокол приёма hit'ов поверх постоянного TCP-соединения.
+ * <p>
+ * После подключения клиент и сервер обмениваются MAGIC и VERSION (по 4 байта). Дальше каждый кадр —
+ * 4 байта длины и содержимое: тип, номер пакета (varint) и поля. Клиент отправляет пакеты HITS, не дожидаясь
+ * ответа, сервер отвечает на каждый пакет по порядку кадром ACK с количеством принятых hit'ов или ERROR
+ * с HTTP-кодом (400, 503, 500), Retry-After и сообщением.
+ * <p>
+ * Поля hit'а: app, uri и ip — ссылки на строки, время — разница эпохи в миллисекундах с предыдущим hit'ом
+ * пакета (zigzag varint), время ответа — varint значения плюс один (0 — не задано). Ссылка 0 означает,
+ * что дальше идёт строка (длина varint и UTF-8), и обе стороны добавляют её в словарь соединения, пока в нём
+ * меньше {@link #MAX_DICTIONARY} строк; ссылка n — строка словаря с номером n - 1. Время hit'а передаётся
+ * как LocalDateTime, отсчитанное от 1970-01-01T00:00, то есть в той же локальной шкале, что и строка в JSON;
+ * сервер, как и для JSON, хранит его с точностью до секунды.
+ */
+public final class HitProtocol {
+    public static final int MAGIC = 0x45574d48;
+    public static final int VERSION = 1;
+    public static final byte HITS = 1;
+    public static final byte ACK = 2;
+    public static final byte ERROR = 3;
+    public static final int MAX_FRAME_BYTES = 16 << 20;
+    public static final int MAX_DICTIONARY = 1 << 16;
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private HitProtocol() {
+    }
+
+    public static byte[] encodeAck(long seq, int accepted) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16);
+        out.write(ACK);
+        writeVarLong(out, seq);
+        writeVarLong(out, accepted);
+        return frame(out);
+    }
+
+    public static byte[] encodeError(long seq, int status, int retryAfterSeconds, String message) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        out.write(ERROR);
+        writeVarLong(out, seq);
+        writeVarLong(out, status);
+        writeVarLong(out, retryAfterSeconds);
+        writeString(out, message == null ? "" : message);
+        return frame(out);
+    }
+
+    public static Response decodeResponse(ByteBuffer payload) {
+        byte type = payload.get();
+        long seq = readVarLong(payload);
+        if (type == ACK) {
+            return new Response(seq, (int) readVarLong(payload), 0, 0, null);
+        }
+        if (type != ERROR) {
+            throw new IllegalArgumentException("Неизвестный тип кадра: " + type);
+        }
+        int status = (int) readVarLong(payload);
+        int retryAfterSeconds = (int) readVarLong(payload);
+        return new Response(seq, 0, status, retryAfterSeconds, readString(payload));
+    }
+
+    public static long toEpochMillis(String timestamp) {
+        return LocalDateTime.parse(timestamp, FORMATTER).toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    /**
+     * Отбрасывает миллисекунды: hit'ы, принятые по HTTP, хранятся с точностью до секунды, и оба канала
+     * должны попадать в одни и те же интервалы выборки.
+     */
+    public static LocalDateTime fromEpochMillis(long epochMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000L), 0, ZoneOffset.UTC);
+    }
+
+    private static byte[] frame(ByteArrayOutputStream payload) {
+        return ByteBuffer.allocate(Integer.BYTES + payload.size())
+                .putInt(payload.size())
+                .put(payload.toByteArray())
+                .array();
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Слишком длинный varint");
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = (int) readVarLong(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("Некорректная длина строки: " + length);
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /**
+     * Кодирует пакеты hit'ов одного соединения. Словарь пополняется только после успешного кодирования
+     * пакета, поэтому некорректный hit не рассинхронизирует словари сторон.
+     */
+    public static final class Encoder {
+        private final Map<String, Integer> dictionary = new HashMap<>();
+
+        public byte[] encodeHits(long seq, List<HitDto> hits) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(32 + hits.size() * 16);
+            Map<String, Integer> added = new LinkedHashMap<>();
+            out.write(HITS);
+            writeVarLong(out, seq);
+            writeVarLong(out, hits.size());
+            long previousMillis = 0;
+            for (HitDto hit : hits) {
+                writeRef(out, hit.getApp(), added);
+                writeRef(out, hit.getUri(), added);
+                writeRef(out, hit.getIp(), added);
+                long millis = toEpochMillis(hit.getTimestamp());
+                long delta = millis - previousMillis;
+                writeVarLong(out, (delta << 1) ^ (delta >> 63));
+                previousMillis = millis;
+                Long responseTimeMs = hit.getResponseTimeMs();
+                writeVarLong(out, responseTimeMs == null || responseTimeMs < 0 ? 0 : responseTimeMs + 1);
+            }
+            dictionary.putAll(added);
+            return frame(out);
+        }
+
+        private void writeRef(ByteArrayOutputStream out, String value, Map<String, Integer> added) {
+            if (value == null) {
+                throw new IllegalArgumentException("Поля app, uri и ip hit'а обязательны");
+            }
+            Integer index = dictionary.get(value);
+            if (index == null) {
+                index = added.get(value);
+            }
+            if (index != null) {
+                writeVarLong(out, index + 1L);
+                return;
+            }
+            writeVarLong(out, 0);
+            writeString(out, value);
+            int size = dictionary.size() + added.size();
+            if (size < MAX_DICTIONARY) {
+                added.put(value, size);
+            }
+        }
+    }
+
+    /**
+     * Разбирает пакеты hit'ов одного соединения в том порядке, в котором они получены.
+     */
+    public static final class Decoder {
+        private final List<String> dictionary = new ArrayList<>();
+
+        /**
+         * @return номер пакета
+         */
+        public long decodeHits(ByteBuffer payload, HitConsumer consumer) {
+            byte type = payload.get();
+            if (type != HITS) {
+                throw new IllegalArgumentException("Неизвестный тип кадра: " + type);
+            }
+            long seq = readVarLong(payload);
+            long count = readVarLong(payload);
+            long previousMillis = 0;
+            for (long i = 0; i < count; i++) {
+                String app = readRef(payload);
+                String uri = readRef(payload);
+                String ip = readRef(payload);
+                long zigzag = readVarLong(payload);
+                long millis = previousMillis + ((zigzag >>> 1) ^ -(zigzag & 1));
+                previousMillis = millis;
+                long responseTime = readVarLong(payload);
+                consumer.accept(app, uri, ip, millis, responseTime == 0 ? null : responseTime - 1);
+            }
+            if (payload.hasRemaining()) {
+                throw new IllegalArgumentException("Лишние байты в конце пакета: " + payload.remaining());
+            }
+            return seq;
+        }
+
+        private String readRef(ByteBuffer in) {
+            long ref = readVarLong(in);
+            if (ref > 0) {
+                if (ref > dictionary.size()) {
+                    throw new IllegalArgumentException("Ссылка на отсутствующую строку словаря: " + ref);
+                }
+                return dictionary.get((int) ref - 1);
+            }
+            String value = readString(in);
+            if (dictionary.size() < MAX_DICTIONARY) {
+                dictionary.add(value);
+            }
+            return value;
+        }
+    }
+
+    @FunctionalInterface
+    public interface HitConsumer {
+        void accept(String app, String uri, String ip, long epochMillis, Long responseTimeMs);
+    }
+
+    /**
+     * Ответ сервера на пакет: ACK, если status равен 0, иначе ERROR.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static final class Response {
+        private final long seq;
+        private final int accepted;
+        private final int status;
+        private final int retryAfterSeconds;
+        private final String message;
+
+        public boolean isError() {
+            return status != 0;
+        }
+    }
+}
\ No newline at end of file
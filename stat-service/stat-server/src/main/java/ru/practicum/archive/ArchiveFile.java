@@ -0,0 +1,428 @@
+package ru.practicum.archive;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Архивный файл hit'ов одного дня в колоночном формате. Каждая колонка хранится отдельным блоком,
+ * сжатым Deflate: время — разницы секунд с предыдущим hit'ом и микросекунды, приложение, URI и IP — номера
+ * в словарях, id строк БД — разницы с предыдущим id. Hit'ы упорядочены по времени, поэтому разницы небольшие
+ * и укладываются в 1–2 байта varint.
+ * <p>
+ * Сноска в конце файла содержит минимальное и максимальное время, словари приложений и URI и положение
+ * блоков: по ней файл отбрасывается без чтения колонок, если не пересекается с диапазоном запроса или
+ * не содержит запрошенных URI. Формат: magic, версия, блоки колонок, сноска, длина сноски, CRC32C сноски, magic.
+ */
+public final class ArchiveFile {
+    static final String SUFFIX = ".col";
+    private static final int MAGIC = 0x45574d41;
+    private static final int VERSION = 1;
+    private static final int TRAILER_BYTES = 3 * Integer.BYTES;
+    private static final int SECONDS = 0;
+    private static final int MICROS = 1;
+    private static final int APPS = 2;
+    private static final int URIS = 3;
+    private static final int IPS = 4;
+    private static final int IP_DICTIONARY = 5;
+    private static final int IDS = 6;
+    private static final int BLOCKS = 7;
+
+    @Getter
+    private final Path path;
+    @Getter
+    private final LocalDate day;
+    @Getter
+    private final int rows;
+    @Getter
+    private final long minMicros;
+    @Getter
+    private final long maxMicros;
+    @Getter
+    private final long maxId;
+    private final String[] apps;
+    private final String[] uris;
+    private final int ipCount;
+    private final Block[] blocks;
+    private final Map<String, Integer> uriIndexes = new HashMap<>();
+
+    private ArchiveFile(Path path, LocalDate day, int rows, long minMicros, long maxMicros, long maxId,
+                        String[] apps, String[] uris, int ipCount, Block[] blocks) {
+        this.path = path;
+        this.day = day;
+        this.rows = rows;
+        this.minMicros = minMicros;
+        this.maxMicros = maxMicros;
+        this.maxId = maxId;
+        this.apps = apps;
+        this.uris = uris;
+        this.ipCount = ipCount;
+        this.blocks = blocks;
+        for (int i = 0; i < uris.length; i++) {
+            uriIndexes.put(uris[i], i);
+        }
+    }
+
+    /**
+     * Записывает hit'ы дня, упорядоченные по времени, во временный файл и атомарно переименовывает его.
+     */
+    public static ArchiveFile write(Path path, LocalDate day, List<Hit> hits) throws IOException {
+        Map<String, Integer> apps = new LinkedHashMap<>();
+        Map<String, Integer> uris = new LinkedHashMap<>();
+        Map<String, Integer> ips = new LinkedHashMap<>();
+        ByteArrayOutputStream[] columns = new ByteArrayOutputStream[BLOCKS];
+        for (int i = 0; i < BLOCKS; i++) {
+            columns[i] = new ByteArrayOutputStream();
+        }
+        long previousSecond = day.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        long previousId = 0;
+        long maxId = 0;
+        for (Hit hit : hits) {
+            long second = hit.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+            writeVarLong(columns[SECONDS], second - previousSecond);
+            previousSecond = second;
+            writeVarLong(columns[MICROS], hit.getTimestamp().getNano() / 1_000);
+            writeVarLong(columns[APPS], apps.computeIfAbsent(hit.getApp(), k -> apps.size()));
+            writeVarLong(columns[URIS], uris.computeIfAbsent(hit.getUri(), k -> uris.size()));
+            Integer ip = ips.get(hit.getIp());
+            if (ip == null) {
+                ip = ips.size();
+                ips.put(hit.getIp(), ip);
+                columns[IP_DICTIONARY].write(IpMapper.toBytes(hit.getIp()));
+            }
+            writeVarLong(columns[IPS], ip);
+            long delta = hit.getId() - previousId;
+            writeVarLong(columns[IDS], (delta << 1) ^ (delta >> 63));
+            previousId = hit.getId();
+            maxId = Math.max(maxId, hit.getId());
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Block[] blocks = new Block[BLOCKS];
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, ByteBuffer.allocate(2 * Integer.BYTES).putInt(MAGIC).putInt(VERSION).flip());
+            for (int i = 0; i < BLOCKS; i++) {
+                byte[] raw = columns[i].toByteArray();
+                byte[] compressed = deflate(raw);
+                blocks[i] = new Block(channel.position(), compressed.length, raw.length, crc(compressed, compressed.length));
+                write(channel, ByteBuffer.wrap(compressed));
+            }
+            ArchiveFile file = new ArchiveFile(path, day, hits.size(), toMicros(hits.get(0).getTimestamp()),
+                    toMicros(hits.get(hits.size() - 1).getTimestamp()), maxId, apps.keySet().toArray(String[]::new),
+                    uris.keySet().toArray(String[]::new), ips.size(), blocks);
+            byte[] footer = file.footer();
+            write(channel, ByteBuffer.wrap(footer));
+            write(channel, ByteBuffer.allocate(TRAILER_BYTES)
+                    .putInt(footer.length).putInt(crc(footer, footer.length)).putInt(MAGIC).flip());
+            channel.force(true);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return file;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Читает только сноску файла, колонки читаются при сканировании.
+     */
+    public static ArchiveFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 2 * Integer.BYTES + TRAILER_BYTES) {
+                throw new IOException("Архивный файл " + path + " обрезан");
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_BYTES, TRAILER_BYTES);
+            int footerLength = trailer.getInt();
+            int footerCrc = trailer.getInt();
+            if (trailer.getInt() != MAGIC || footerLength <= 0 || footerLength > size - TRAILER_BYTES) {
+                throw new IOException("Архивный файл " + path + " другого формата или обрезан");
+            }
+            byte[] footer = read(channel, size - TRAILER_BYTES - footerLength, footerLength).array();
+            if (crc(footer, footer.length) != footerCrc) {
+                throw new IOException("Контрольная сумма сноски архивного файла " + path + " не совпадает");
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(footer));
+            if (in.readInt() != VERSION) {
+                throw new IOException("Архивный файл " + path + " другой версии");
+            }
+            LocalDate day = LocalDate.ofEpochDay(in.readLong());
+            int rows = in.readInt();
+            long minMicros = in.readLong();
+            long maxMicros = in.readLong();
+            long maxId = in.readLong();
+            String[] apps = readStrings(in);
+            String[] uris = readStrings(in);
+            int ipCount = in.readInt();
+            Block[] blocks = new Block[BLOCKS];
+            for (int i = 0; i < BLOCKS; i++) {
+                blocks[i] = new Block(in.readLong(), in.readInt(), in.readInt(), in.readInt());
+            }
+            return new ArchiveFile(path, day, rows, minMicros, maxMicros, maxId, apps, uris, ipCount, blocks);
+        }
+    }
+
+    public static long toMicros(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + time.getNano() / 1_000;
+    }
+
+    public String app(int index) {
+        return apps[index];
+    }
+
+    public String uri(int index) {
+        return uris[index];
+    }
+
+    public boolean overlaps(long fromMicros, long toMicros) {
+        return minMicros <= toMicros && maxMicros >= fromMicros;
+    }
+
+    /**
+     * @return номера запрошенных URI, которые есть в файле, или null, если фильтра нет
+     */
+    public boolean[] matchUris(Collection<String> requested) {
+        if (requested == null) {
+            return null;
+        }
+        boolean[] matched = new boolean[uris.length];
+        for (String uri : requested) {
+            Integer index = uriIndexes.get(uri);
+            if (index != null) {
+                matched[index] = true;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Словарь IP: по 16 байт на адрес в порядке номеров.
+     */
+    public byte[] readIps() throws IOException {
+        return readBlock(IP_DICTIONARY);
+    }
+
+    /**
+     * Id строк БД, из которых записан файл, в порядке hit'ов.
+     */
+    public long[] readIds() throws IOException {
+        Column column = new Column(readBlock(IDS));
+        long[] ids = new long[rows];
+        long id = 0;
+        for (int i = 0; i < rows; i++) {
+            long zigzag = column.next();
+            id += (zigzag >>> 1) ^ -(zigzag & 1);
+            ids[i] = id;
+        }
+        return ids;
+    }
+
+    /**
+     * Перебирает hit'ы с временем в [fromMicros, toMicros] и URI из фильтра ({@code null} — все URI).
+     * Если {@code withIps} не задан, колонка IP не читается и вместо номера IP передаётся -1.
+     */
+    public void scan(long fromMicros, long toMicros, boolean[] uriFilter, boolean withIps, RowConsumer consumer)
+            throws IOException {
+        if (!overlaps(fromMicros, toMicros) || (uriFilter != null && !matchesAny(uriFilter))) {
+            return;
+        }
+        Column seconds = new Column(readBlock(SECONDS));
+        Column micros = new Column(readBlock(MICROS));
+        Column appColumn = new Column(readBlock(APPS));
+        Column uriColumn = new Column(readBlock(URIS));
+        Column ipColumn = withIps ? new Column(readBlock(IPS)) : null;
+        long second = day.atStartOfDay().toEpochSecond(ZoneOffset.UTC);
+        for (int i = 0; i < rows; i++) {
+            second += seconds.next();
+            long time = second * 1_000_000L + micros.next();
+            int app = (int) appColumn.next();
+            int uri = (int) uriColumn.next();
+            int ip = ipColumn != null ? (int) ipColumn.next() : -1;
+            if (time > toMicros) {
+                return;
+            }
+            if (time >= fromMicros && (uriFilter == null || uriFilter[uri])) {
+                consumer.accept(time, app, uri, ip);
+            }
+        }
+    }
+
+    public static boolean matchesAny(boolean[] uriFilter) {
+        for (boolean matched : uriFilter) {
+            if (matched) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private byte[] footer() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        out.writeLong(day.toEpochDay());
+        out.writeInt(rows);
+        out.writeLong(minMicros);
+        out.writeLong(maxMicros);
+        out.writeLong(maxId);
+        writeStrings(out, apps);
+        writeStrings(out, uris);
+        out.writeInt(ipCount);
+        for (Block block : blocks) {
+            out.writeLong(block.offset);
+            out.writeInt(block.length);
+            out.writeInt(block.rawLength);
+            out.writeInt(block.crc);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private byte[] readBlock(int index) throws IOException {
+        Block block = blocks[index];
+        byte[] compressed;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            compressed = read(channel, block.offset, block.length).array();
+        }
+        if (crc(compressed, compressed.length) != block.crc) {
+            throw new IOException("Контрольная сумма колонки " + index + " архивного файла " + path + " не совпадает");
+        }
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[block.rawLength];
+            int inflated = 0;
+            while (inflated < raw.length && !inflater.finished()) {
+                inflated += inflater.inflate(raw, inflated, raw.length - inflated);
+            }
+            if (inflated != raw.length) {
+                throw new IOException("Колонка " + index + " архивного файла " + path + " повреждена");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Колонка " + index + " архивного файла " + path + " повреждена", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[1 << 16];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeStrings(DataOutputStream out, String[] values) throws IOException {
+        out.writeInt(values.length);
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String[] readStrings(DataInputStream in) throws IOException {
+        String[] values = new String[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readUTF();
+        }
+        return values;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Неожиданный конец архивного файла");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static int crc(byte[] bytes, int length) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 0, length);
+        return (int) crc.getValue();
+    }
+
+    @FunctionalInterface
+    public interface RowConsumer {
+        void accept(long micros, int app, int uri, int ip);
+    }
+
+    private static final class Column {
+        private final byte[] bytes;
+        private int position;
+
+        private Column(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private long next() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            return value;
+        }
+    }
+
+    @AllArgsConstructor
+    private static final class Block {
+        private final long offset;
+        private final int length;
+        private final int rawLength;
+        private final int crc;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,329 @@
+package ru.practicum.archive;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.model.StatKey;
+import ru.practicum.model.StatSlice;
+import ru.practicum.model.Visitor;
+import ru.practicum.repository.HitArchiveRepository;
+import ru.practicum.rollup.Rollup;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Архив сырых hit'ов, перенесённых из statistics: по файлу {@link ArchiveFile} на день (поздние hit'ы уже
+ * перенесённого дня попадают в отдельный файл). При старте читаются только сноски файлов.
+ * <p>
+ * Запросы, объединяющие БД с архивом, выполняются под блокировкой чтения, а удаление строк дня из БД
+ * и подключение его файла — под блокировкой записи, поэтому запрос не видит hit'ы дня ни дважды, ни ни разу.
+ * Файл сначала записывается как .pending: если сервер остановился до удаления строк, при старте строки
+ * удаляются по id из файла, и перенос завершается.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitArchive {
+    private static final String PENDING = ".pending";
+    private static final String TEMP = ".tmp";
+
+    private final HitArchiveRepository hitArchiveRepository;
+    private final Path dir;
+    private final List<ArchiveFile> files = new CopyOnWriteArrayList<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public HitArchive(HitArchiveRepository hitArchiveRepository,
+                      @Value("${stat-server.archive.dir:data/archive}") String dir) {
+        this.hitArchiveRepository = hitArchiveRepository;
+        this.dir = Path.of(dir);
+    }
+
+    @PostConstruct
+    public void open() {
+        try {
+            Files.createDirectories(dir);
+            List<Path> paths;
+            try (Stream<Path> listed = Files.list(dir)) {
+                paths = listed.sorted().collect(Collectors.toList());
+            }
+            for (Path path : paths) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(TEMP)) {
+                    Files.delete(path);
+                } else if (name.endsWith(PENDING)) {
+                    log.info("Завершаем перенос в архив файла {}", path);
+                    publish(ArchiveFile.open(path));
+                } else if (name.endsWith(ArchiveFile.SUFFIX)) {
+                    files.add(ArchiveFile.open(path));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть архив hit'ов " + dir, e);
+        }
+        log.info("Архив hit'ов {}: {} файлов, {} hit'ов", dir, files.size(),
+                files.stream().mapToLong(ArchiveFile::getRows).sum());
+    }
+
+    /**
+     * Переносит hit'ы дня из statistics в архивный файл.
+     *
+     * @return количество перенесённых hit'ов
+     */
+    public int archive(LocalDate day) {
+        LocalDateTime from = day.atStartOfDay();
+        List<Hit> hits = hitArchiveRepository.findRange(from, from.plusDays(1));
+        if (hits.isEmpty()) {
+            return 0;
+        }
+        long maxId = hits.stream().mapToLong(Hit::getId).max().orElseThrow();
+        Path pending = dir.resolve("hits-" + day.format(DateTimeFormatter.BASIC_ISO_DATE) + "-" +
+                String.format("%020d", maxId) + ArchiveFile.SUFFIX + PENDING);
+        try {
+            publish(ArchiveFile.write(pending, day, hits));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось записать архивный файл " + pending, e);
+        }
+        return hits.size();
+    }
+
+    public <T> T reading(Supplier<T> query) {
+        lock.readLock().lock();
+        try {
+            return query.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void reading(Runnable query) {
+        reading(() -> {
+            query.run();
+            return null;
+        });
+    }
+
+    public boolean isEmpty() {
+        return files.isEmpty();
+    }
+
+    public boolean hasFilesBefore(LocalDate boundary) {
+        return files.stream().anyMatch(file -> file.getDay().isBefore(boundary));
+    }
+
+    /**
+     * Удаляет файлы дней до boundary (срок хранения).
+     */
+    public void deleteBefore(LocalDate boundary) {
+        lock.writeLock().lock();
+        try {
+            for (ArchiveFile file : files) {
+                if (file.getDay().isBefore(boundary)) {
+                    files.remove(file);
+                    Files.deleteIfExists(file.getPath());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось удалить архивные файлы до " + boundary, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return начало первого дня после архива или null, если архив пуст. Файлы покрывают дни целиком,
+     * поэтому граница совпадает с границами интервалов любого {@link Rollup}.
+     */
+    public LocalDateTime archivedUntil() {
+        return files.stream().map(ArchiveFile::getDay).max(LocalDate::compareTo)
+                .map(day -> day.plusDays(1).atStartOfDay())
+                .orElse(null);
+    }
+
+    public long findLastHitId() {
+        return files.stream().mapToLong(ArchiveFile::getMaxId).max().orElse(0);
+    }
+
+    public LocalDateTime findFirstTimestamp() {
+        OptionalLong first = files.stream().mapToLong(ArchiveFile::getMinMicros).min();
+        return first.isPresent() ? fromMicros(first.getAsLong()) : null;
+    }
+
+    public LocalDateTime findLastTimestamp() {
+        OptionalLong last = files.stream().mapToLong(ArchiveFile::getMaxMicros).max();
+        return last.isPresent() ? fromMicros(last.getAsLong()) : null;
+    }
+
+    public boolean overlaps(LocalDateTime from, LocalDateTime to, boolean toInclusive) {
+        long fromMicros = ArchiveFile.toMicros(from);
+        long toMicros = toMicros(to, toInclusive);
+        return files.stream().anyMatch(file -> file.overlaps(fromMicros, toMicros));
+    }
+
+    public void collectHits(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                            StatSlice target) {
+        scan(ArchiveFile.toMicros(from), toMicros(to, toInclusive), uris, false, (keys, ips) ->
+                (time, app, uri, ip) -> target.addHits(keys.get(app, uri), 1));
+    }
+
+    public void collectTotals(StatSlice target) {
+        scan(Long.MIN_VALUE, Long.MAX_VALUE, null, false, (keys, ips) ->
+                (time, app, uri, ip) -> target.addHits(keys.get(app, uri), 1));
+    }
+
+    public void collectVisitors(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                                StatSlice target) {
+        scan(ArchiveFile.toMicros(from), toMicros(to, toInclusive), uris, true, (keys, ips) ->
+                (time, app, uri, ip) -> target.addVisitor(keys.get(app, uri),
+                        ips.getLong(ip * IpMapper.IP_BYTES), ips.getLong(ip * IpMapper.IP_BYTES + Long.BYTES)));
+    }
+
+    /**
+     * Добавляет IP hit'ов диапазона в скетчи с тем же хешем строки IP, что и у скетчей statistics_hll,
+     * чтобы посетитель, встреченный и в архиве, и в БД, учитывался один раз.
+     */
+    public void collectSketches(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                                Map<StatKey, HyperLogLog> target) {
+        scan(ArchiveFile.toMicros(from), toMicros(to, toInclusive), uris, true, (keys, ips) -> {
+            long[] hashes = new long[ips.capacity() / IpMapper.IP_BYTES];
+            BitSet hashed = new BitSet();
+            byte[] ip16 = new byte[IpMapper.IP_BYTES];
+            return (time, app, uri, ip) -> {
+                if (!hashed.get(ip)) {
+                    ips.get(ip * IpMapper.IP_BYTES, ip16);
+                    hashes[ip] = HyperLogLog.hash(IpMapper.fromBytes(ip16));
+                    hashed.set(ip);
+                }
+                target.computeIfAbsent(keys.get(app, uri), k -> new HyperLogLog()).addHash(hashes[ip]);
+            };
+        });
+    }
+
+    /**
+     * Раскладывает hit'ы диапазона по интервалам bucket: для unique собираются множества IP, иначе счётчики.
+     */
+    public void collectTimeline(Rollup bucket, LocalDateTime from, LocalDateTime to, boolean toInclusive,
+                                List<String> uris, boolean unique, Map<LocalDateTime, StatSlice> target) {
+        long bucketMicros = bucket.getSeconds() * 1_000_000L;
+        Map<Long, StatSlice> slices = new HashMap<>();
+        scan(ArchiveFile.toMicros(from), toMicros(to, toInclusive), uris, unique, (keys, ips) ->
+                (time, app, uri, ip) -> {
+                    StatSlice slice = slices.computeIfAbsent(Math.floorDiv(time, bucketMicros), start ->
+                            target.computeIfAbsent(fromMicros(start * bucketMicros), k -> new StatSlice()));
+                    if (unique) {
+                        slice.addVisitor(keys.get(app, uri), ips.getLong(ip * IpMapper.IP_BYTES),
+                                ips.getLong(ip * IpMapper.IP_BYTES + Long.BYTES));
+                    } else {
+                        slice.addHits(keys.get(app, uri), 1);
+                    }
+                });
+    }
+
+    /**
+     * Передаёт каждую тройку (app, uri, ip) из каждого файла один раз.
+     */
+    public void forEachVisitor(Consumer<Visitor> consumer) {
+        scan(Long.MIN_VALUE, Long.MAX_VALUE, null, true, (keys, ips) -> {
+            Map<StatKey, BitSet> seen = new HashMap<>();
+            byte[] ip16 = new byte[IpMapper.IP_BYTES];
+            return (time, app, uri, ip) -> {
+                StatKey key = keys.get(app, uri);
+                BitSet ipsOfKey = seen.computeIfAbsent(key, k -> new BitSet());
+                if (!ipsOfKey.get(ip)) {
+                    ipsOfKey.set(ip);
+                    ips.get(ip * IpMapper.IP_BYTES, ip16);
+                    consumer.accept(new Visitor(key.getApp(), key.getUri(), IpMapper.fromBytes(ip16)));
+                }
+            };
+        });
+    }
+
+    private void scan(long fromMicros, long toMicros, List<String> uris, boolean withIps, FileScan scan) {
+        for (ArchiveFile file : files) {
+            boolean[] uriFilter = file.matchUris(uris);
+            if (!file.overlaps(fromMicros, toMicros) || (uriFilter != null && !ArchiveFile.matchesAny(uriFilter))) {
+                continue;
+            }
+            try {
+                ByteBuffer ips = withIps ? ByteBuffer.wrap(file.readIps()) : null;
+                file.scan(fromMicros, toMicros, uriFilter, withIps, scan.start(new Keys(file), ips));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось прочитать архивный файл " + file.getPath(), e);
+            }
+        }
+    }
+
+    // строки удаляются по id из файла, поэтому повторное завершение после сбоя ничего не удалит лишнего
+    private void publish(ArchiveFile pending) throws IOException {
+        long[] ids = pending.readIds();
+        LocalDateTime from = pending.getDay().atStartOfDay();
+        String name = pending.getPath().getFileName().toString();
+        Path path = pending.getPath().resolveSibling(name.substring(0, name.length() - PENDING.length()));
+        lock.writeLock().lock();
+        try {
+            int deleted = hitArchiveRepository.deleteArchived(from, from.plusDays(1), ids);
+            Files.move(pending.getPath(), path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            files.removeIf(file -> file.getPath().equals(path));
+            files.add(ArchiveFile.open(path));
+            log.info("В архив {} перенесено {} hit'ов за {}, удалено из БД {}", path.getFileName(), ids.length,
+                    pending.getDay(), deleted);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static long toMicros(LocalDateTime to, boolean toInclusive) {
+        return ArchiveFile.toMicros(to) - (toInclusive ? 0 : 1);
+    }
+
+    private static LocalDateTime fromMicros(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    @FunctionalInterface
+    private interface FileScan {
+        ArchiveFile.RowConsumer start(Keys keys, ByteBuffer ips);
+    }
+
+    /**
+     * Ключи (app, uri) по номерам словарей файла, чтобы не создавать ключ на каждый hit.
+     */
+    private static final class Keys {
+        private final ArchiveFile file;
+        private final Map<Long, StatKey> keys = new HashMap<>();
+
+        private Keys(ArchiveFile file) {
+            this.file = file;
+        }
+
+        private StatKey get(int app, int uri) {
+            return keys.computeIfAbsent((long) app << 32 | uri, k -> new StatKey(file.app(app), file.uri(uri)));
+        }
+    }
+}
\ No newline at end of file
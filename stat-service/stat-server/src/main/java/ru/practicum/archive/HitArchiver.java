@@ -0,0 +1,72 @@
+package ru.practicum.archive;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.cache.StatQueryCache;
+import ru.practicum.repository.StatRepository;
+import ru.practicum.snapshot.StatSnapshot;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Переносит сырые hit'ы старше age-days из statistics в {@link HitArchive} по одному дню.
+ * Rollup-таблицы и скетчи остаются в БД, поэтому из архива читаются только точные уникальные посещения
+ * и неполные минуты на краях диапазона. После каждого дня сбрасываются закэшированные окна, которые его
+ * задевают: ответ, вычисленный во время переноса, мог учесть день дважды или не учесть вовсе.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitArchiver {
+    private final StatRepository statRepository;
+    private final HitArchive hitArchive;
+    private final StatSnapshot statSnapshot;
+    private final StatQueryCache statQueryCache;
+    private final boolean enabled;
+    private final int ageDays;
+
+    public HitArchiver(StatRepository statRepository,
+                       HitArchive hitArchive,
+                       StatSnapshot statSnapshot,
+                       StatQueryCache statQueryCache,
+                       @Value("${stat-server.archive.enabled:false}") boolean enabled,
+                       @Value("${stat-server.archive.age-days:90}") int ageDays) {
+        this.statRepository = statRepository;
+        this.hitArchive = hitArchive;
+        this.statSnapshot = statSnapshot;
+        this.statQueryCache = statQueryCache;
+        this.enabled = enabled;
+        this.ageDays = ageDays;
+    }
+
+    @Scheduled(cron = "${stat-server.archive.cron:0 30 3 * * *}")
+    public void archiveScheduled() {
+        if (enabled) {
+            archive(LocalDate.now().minusDays(ageDays));
+        }
+    }
+
+    /**
+     * Переносит в архив все дни до boundary, по которым в statistics есть hit'ы.
+     */
+    public void archive(LocalDate boundary) {
+        LocalDateTime first = statRepository.findFirstTimestamp();
+        if (first == null || !first.toLocalDate().isBefore(boundary)) {
+            return;
+        }
+        // id поздних hit'ов старого дня могут быть больше отметки снимка, а дочитывание после отметки
+        // идёт только по БД, поэтому снимок переписывается
+        statSnapshot.rewrite(() -> {
+            long archived = 0;
+            for (LocalDate day = first.toLocalDate(); day.isBefore(boundary); day = day.plusDays(1)) {
+                archived += hitArchive.archive(day);
+                statQueryCache.invalidate(day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+            }
+            log.info("В архив перенесено {} hit'ов за дни до {}", archived, boundary);
+        });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,260 @@
+package ru.practicum.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.dictionary.UriTrie;
+import ru.practicum.dto.StatDto;
+import ru.practicum.model.Hit;
+import ru.practicum.model.StatGrouping;
+import ru.practicum.model.StatPrecision;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный LRU-кэш ответов /stats. Кэшируются только закрытые окна — end раньше now минус open-lag-seconds,
+ * то есть окна, в которые обычные hit'ы уже не попадают. Открытые окна меняет каждый новый hit, поэтому
+ * они читаются из хранилища мимо кэша. Закрытое окно меняется только опоздавшим hit'ом: для каждого URI
+ * ведётся водяной знак — самый поздний end записей, покрывающих URI. Hit с timestamp не позже знака
+ * сбрасывает затронутые записи, остальные hit'ы проходят без блокировки.
+ */
+@Slf4j
+@Component
+public class StatQueryCache {
+    private final int maxEntries;
+    private final int maxRows;
+    private final long ttlNanos;
+    private final Duration openLag;
+    private final LinkedHashMap<CacheKey, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private volatile Map<String, Long> uriWatermarks = new ConcurrentHashMap<>();
+    private volatile long globalWatermark = Long.MIN_VALUE;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter bypassed;
+    private final Counter invalidations;
+
+    public StatQueryCache(MeterRegistry meterRegistry,
+                          @Value("${stat-server.cache.max-entries:10000}") int maxEntries,
+                          @Value("${stat-server.cache.max-rows:10000}") int maxRows,
+                          @Value("${stat-server.cache.closed-ttl-seconds:3600}") long closedTtlSeconds,
+                          @Value("${stat-server.cache.open-lag-seconds:60}") long openLagSeconds) {
+        this.maxEntries = maxEntries;
+        this.maxRows = maxRows;
+        this.ttlNanos = Duration.ofSeconds(closedTtlSeconds).toNanos();
+        this.openLag = Duration.ofSeconds(openLagSeconds);
+        this.hits = Counter.builder("stat.cache.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("stat.cache.requests").tag("result", "miss").register(meterRegistry);
+        this.bypassed = Counter.builder("stat.cache.requests").tag("result", "bypass").register(meterRegistry);
+        this.invalidations = Counter.builder("stat.cache.invalidations").register(meterRegistry);
+        Gauge.builder("stat.cache.size", this, StatQueryCache::size).register(meterRegistry);
+        Gauge.builder("stat.cache.hit.ratio", this, StatQueryCache::hitRatio).register(meterRegistry);
+    }
+
+    /**
+     * Возвращает ответ из кэша или вычисляет его. Запись резервируется до вычисления, поэтому
+     * опоздавший hit, пришедший во время запроса к хранилищу, не даст закэшировать устаревший ответ.
+     */
+    public List<StatDto> getOrLoad(LocalDateTime start, LocalDateTime end, String[] uris, boolean unique,
+                                   StatPrecision precision, StatGrouping grouping, Supplier<List<StatDto>> loader) {
+        if (!end.isBefore(LocalDateTime.now().minus(openLag))) {
+            bypassed.increment();
+            return loader.get();
+        }
+        List<String> sortedUris = uris == null || uris.length == 0 ? null : List.of(uris).stream().sorted().toList();
+        CacheKey key = new CacheKey(start, end, sortedUris, unique, precision, grouping);
+        Entry entry;
+        synchronized (this) {
+            Entry cached = entries.get(key);
+            if (cached != null && cached.result != null && cached.expiresAt - System.nanoTime() > 0) {
+                hits.increment();
+                return cached.result;
+            }
+            misses.increment();
+            entry = new Entry(start, end, sortedUris);
+            entries.put(key, entry);
+            raiseWatermarks(entry);
+            evictOverflow();
+        }
+        List<StatDto> result;
+        try {
+            result = loader.get();
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                entries.remove(key, entry);
+            }
+            throw e;
+        }
+        synchronized (this) {
+            if (entries.get(key) == entry) {
+                if (result.size() <= maxRows) {
+                    entry.result = List.copyOf(result);
+                    entry.expiresAt = System.nanoTime() + ttlNanos;
+                } else {
+                    entries.remove(key);
+                }
+            }
+        }
+        return result;
+    }
+
+    public void onHit(Hit hit) {
+        long second = toSecond(hit.getTimestamp());
+        Long uriWatermark = uriWatermarks.get(hit.getUri());
+        if (second > globalWatermark && (uriWatermark == null || second > uriWatermark)) {
+            return;
+        }
+        synchronized (this) {
+            int removed = 0;
+            Iterator<Entry> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.covers(hit.getUri(), hit.getTimestamp())) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                invalidations.increment(removed);
+                log.debug("Опоздавший hit {} {} сбросил {} записей кэша", hit.getUri(), hit.getTimestamp(), removed);
+            }
+            rebuildWatermarks();
+        }
+    }
+
+    /**
+     * Сбрасывает записи, окна которых пересекаются с [from, to), в том числе ещё вычисляемые: их ответ
+     * не попадёт в кэш. Вызывается, когда hit'ы этого интервала переносятся внутри хранилища.
+     */
+    public synchronized void invalidate(LocalDateTime from, LocalDateTime to) {
+        int removed = 0;
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.start.isBefore(to) && !entry.end.isBefore(from)) {
+                iterator.remove();
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            invalidations.increment(removed);
+            log.debug("Перенос hit'ов за [{}, {}) сбросил {} записей кэша", from, to, removed);
+            rebuildWatermarks();
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        rebuildWatermarks();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private void evictOverflow() {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (entries.size() > maxEntries && iterator.hasNext()) {
+            iterator.next();
+            iterator.remove();
+        }
+    }
+
+    private void raiseWatermarks(Entry entry) {
+        long end = toSecond(entry.end);
+        if (entry.hasGlobalWatermark()) {
+            globalWatermark = Math.max(globalWatermark, end);
+        } else {
+            entry.exactUris.forEach(uri -> uriWatermarks.merge(uri, end, Math::max));
+        }
+    }
+
+    /**
+     * Пересчитывает водяные знаки по оставшимся записям. Новая карта подменяет старую целиком,
+     * чтобы onHit без блокировки не увидел её наполовину заполненной.
+     */
+    private void rebuildWatermarks() {
+        Map<String, Long> rebuilt = new ConcurrentHashMap<>();
+        long global = Long.MIN_VALUE;
+        for (Entry entry : entries.values()) {
+            long end = toSecond(entry.end);
+            if (entry.hasGlobalWatermark()) {
+                global = Math.max(global, end);
+            } else {
+                entry.exactUris.forEach(uri -> rebuilt.merge(uri, end, Math::max));
+            }
+        }
+        uriWatermarks = rebuilt;
+        globalWatermark = global;
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class CacheKey {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final List<String> uris;
+        private final boolean unique;
+        private final StatPrecision precision;
+        private final StatGrouping grouping;
+    }
+
+    private static final class Entry {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final boolean allUris;
+        private final List<String> exactUris = new ArrayList<>();
+        private final List<String> prefixes = new ArrayList<>();
+        private List<StatDto> result;
+        private long expiresAt;
+
+        private Entry(LocalDateTime start, LocalDateTime end, List<String> uris) {
+            this.start = start;
+            this.end = end;
+            this.allUris = uris == null;
+            if (uris != null) {
+                for (String uri : uris) {
+                    if (UriTrie.isPattern(uri)) {
+                        prefixes.add(UriTrie.prefixOf(uri));
+                    } else {
+                        exactUris.add(uri);
+                    }
+                }
+            }
+        }
+
+        // шаблон может покрыть URI, которого ещё нет в словаре, поэтому такие записи учитываются в общем знаке
+        private boolean hasGlobalWatermark() {
+            return allUris || !prefixes.isEmpty();
+        }
+
+        private boolean covers(String uri, LocalDateTime timestamp) {
+            if (timestamp.isBefore(start) || timestamp.isAfter(end)) {
+                return false;
+            }
+            return allUris || exactUris.contains(uri) || prefixes.stream().anyMatch(uri::startsWith);
+        }
+    }
+}
\ No newline at end of file
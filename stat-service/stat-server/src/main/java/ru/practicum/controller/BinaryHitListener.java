@@ -0,0 +1,186 @@
+package ru.practicum.controller;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.exceptions.IngestOverloadException;
+import ru.practicum.exceptions.ValidationRequestException;
+import ru.practicum.mapper.HitMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.protocol.HitProtocol;
+import ru.practicum.service.StatService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Приём hit'ов по бинарному протоколу {@link HitProtocol} на отдельном TCP-порту. Каждое соединение
+ * обслуживает свой поток: пакеты разбираются и принимаются по порядку через тот же путь, что и POST /hits,
+ * а подтверждения отправляются, когда прочитаны все пришедшие к этому моменту пакеты.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stat-server.binary.enabled", havingValue = "true")
+public class BinaryHitListener {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final StatService statService;
+    private final int port;
+    private final int maxConnections;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threadNumber = new AtomicInteger();
+    private final ExecutorService workers = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "hit-binary-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter frames;
+    private final Counter rejectedConnections;
+    private ServerSocket serverSocket;
+
+    public BinaryHitListener(StatService statService,
+                             MeterRegistry meterRegistry,
+                             @Value("${stat-server.binary.port:9091}") int port,
+                             @Value("${stat-server.binary.max-connections:256}") int maxConnections) {
+        this.statService = statService;
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.frames = Counter.builder("stat.ingest.binary.frames").register(meterRegistry);
+        this.rejectedConnections = Counter.builder("stat.ingest.binary.rejected-connections").register(meterRegistry);
+        Gauge.builder("stat.ingest.binary.connections", connections, Set::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        try {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(port));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть порт бинарного приёма hit'ов " + port, e);
+        }
+        Thread acceptor = new Thread(this::accept, "hit-binary-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Бинарный приём hit'ов на порту {}", port);
+    }
+
+    @PreDestroy
+    public void stop() throws IOException {
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+        workers.shutdown();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                if (connections.size() >= maxConnections) {
+                    rejectedConnections.increment();
+                    log.warn("Достигнут предел {} бинарных соединений, {} отклонено", maxConnections,
+                            socket.getRemoteSocketAddress());
+                    socket.close();
+                    continue;
+                }
+                connections.add(socket);
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!serverSocket.isClosed()) {
+                    log.error("Ошибка приёма бинарного соединения", e);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE));
+            if (in.readInt() != HitProtocol.MAGIC || in.readInt() != HitProtocol.VERSION) {
+                log.warn("Бинарное соединение {} другого протокола или версии, закрываем", socket.getRemoteSocketAddress());
+                return;
+            }
+            out.writeInt(HitProtocol.MAGIC);
+            out.writeInt(HitProtocol.VERSION);
+            out.flush();
+            HitProtocol.Decoder decoder = new HitProtocol.Decoder();
+            while (true) {
+                int length = in.readInt();
+                if (length <= 0 || length > HitProtocol.MAX_FRAME_BYTES) {
+                    log.warn("Некорректная длина кадра {} от {}, закрываем соединение", length,
+                            socket.getRemoteSocketAddress());
+                    return;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                out.write(process(decoder, payload));
+                // подтверждения пакетов, пришедших одной порцией, уходят вместе
+                if (in.available() == 0) {
+                    out.flush();
+                }
+            }
+        } catch (EOFException | SocketException e) {
+            log.debug("Бинарное соединение {} закрыто", socket.getRemoteSocketAddress());
+        } catch (IOException | RuntimeException e) {
+            log.warn("Бинарное соединение {} закрыто из-за ошибки", socket.getRemoteSocketAddress(), e);
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    // ошибка разбора кадра означает рассинхронизацию словарей, поэтому она закрывает соединение,
+    // а ошибки приёма разобранного пакета возвращаются клиенту
+    private byte[] process(HitProtocol.Decoder decoder, byte[] payload) {
+        List<Hit> hits = new ArrayList<>();
+        List<ValidationRequestException> invalid = new ArrayList<>(1);
+        long seq = decoder.decodeHits(ByteBuffer.wrap(payload), (app, uri, ip, epochMillis, responseTimeMs) -> {
+            if (invalid.isEmpty()) {
+                try {
+                    hits.add(HitMapper.toHit(app, uri, ip, HitProtocol.fromEpochMillis(epochMillis), responseTimeMs));
+                } catch (ValidationRequestException e) {
+                    invalid.add(e);
+                }
+            }
+        });
+        frames.increment();
+        if (!invalid.isEmpty()) {
+            return HitProtocol.encodeError(seq, 400, 0, invalid.get(0).getMessage());
+        }
+        try {
+            return HitProtocol.encodeAck(seq, statService.addParsedHits(hits));
+        } catch (ValidationRequestException e) {
+            return HitProtocol.encodeError(seq, 400, 0, e.getMessage());
+        } catch (IngestOverloadException e) {
+            return HitProtocol.encodeError(seq, 503, e.getRetryAfterSeconds(), e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Ошибка приёма пакета {} из {} hit'ов по бинарному протоколу", seq, hits.size(), e);
+            return HitProtocol.encodeError(seq, 500, 0, "Внутренняя ошибка сервера статистики");
+        }
+    }
+}
\ No newline at end of file
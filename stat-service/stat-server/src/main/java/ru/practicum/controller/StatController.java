@@ -1,13 +1,30 @@
 package ru.practicum.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.dto.HitDto;
+import ru.practicum.dto.LatencyDto;
 import ru.practicum.dto.StatDto;
+import ru.practicum.dto.StatQueryDto;
+import ru.practicum.dto.TimelineDto;
+import ru.practicum.exceptions.ValidationRequestException;
+import ru.practicum.model.StatGrouping;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.TopWindow;
+import ru.practicum.rollup.Rollup;
 import ru.practicum.service.StatService;
+import ru.practicum.service.StatStream;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
@@ -18,6 +35,7 @@ import java.util.List;
 public class StatController {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private final StatService statService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -26,15 +44,146 @@ public class StatController {
         statService.addHit(hitDto);
     }
 
+    @PostMapping("/hits")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void addHits(@RequestBody List<HitDto> hitDtos) {
+        log.info("POST /hits: {} hit'ов", hitDtos.size());
+        statService.addHits(hitDtos);
+    }
+
     @GetMapping("/stats")
     @ResponseStatus(HttpStatus.OK)
     public List<StatDto> getStats(@RequestParam String start,
                                   @RequestParam String end,
                                   @RequestParam(required = false) String[] uris,
-                                  @RequestParam(defaultValue = "false") boolean unique) {
+                                  @RequestParam(defaultValue = "false") boolean unique,
+                                  @RequestParam(defaultValue = "exact") String precision,
+                                  @RequestParam(defaultValue = "uri") String group) {
+        LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        log.info("GET /stats?start={}&end={}&uris={}&unique={}&precision={}&group={}",
+                start, end, uris, unique, precision, group);
+        return statService.getStats(startTime, endTime, uris, unique, StatPrecision.from(precision),
+                StatGrouping.from(group));
+    }
+
+    @GetMapping("/stats/top")
+    @ResponseStatus(HttpStatus.OK)
+    public List<StatDto> getTop(@RequestParam(defaultValue = "10") int n,
+                                @RequestParam(defaultValue = "1h") String window) {
+        log.info("GET /stats/top?n={}&window={}", n, window);
+        return statService.getTop(n, TopWindow.from(window));
+    }
+
+    @GetMapping("/stats/realtime")
+    @ResponseStatus(HttpStatus.OK)
+    public List<StatDto> getRealtime(@RequestParam(required = false) String[] uris,
+                                     @RequestParam(defaultValue = "5m") String window) {
+        log.info("GET /stats/realtime?uris={}&window={}", uris, window);
+        return statService.getRealtime(uris, window);
+    }
+
+    @GetMapping("/stats/timeline")
+    @ResponseStatus(HttpStatus.OK)
+    public List<TimelineDto> getTimeline(@RequestParam String start,
+                                         @RequestParam String end,
+                                         @RequestParam(name = "uri", required = false) String[] uris,
+                                         @RequestParam(defaultValue = "1h") String bucket,
+                                         @RequestParam(defaultValue = "false") boolean unique) {
+        LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        log.info("GET /stats/timeline?start={}&end={}&uri={}&bucket={}&unique={}", start, end, uris, bucket, unique);
+        return statService.getTimeline(startTime, endTime, uris, Rollup.from(bucket), unique);
+    }
+
+    @GetMapping("/stats/latency")
+    @ResponseStatus(HttpStatus.OK)
+    public LatencyDto getLatency(@RequestParam String uri,
+                                 @RequestParam String start,
+                                 @RequestParam String end) {
         LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
         LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
-        log.info("GET /stats?start={}&end={}&uris={}&unique={}", start, end, uris, unique);
-        return statService.getStats(startTime, endTime, uris, unique);
+        log.info("GET /stats/latency?uri={}&start={}&end={}", uri, start, end);
+        return statService.getLatency(startTime, endTime, uri);
+    }
+
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public StreamingResponseBody streamStats(@RequestParam String start,
+                                             @RequestParam String end,
+                                             @RequestParam(required = false) String[] uris,
+                                             @RequestParam(defaultValue = "false") boolean unique,
+                                             @RequestParam(defaultValue = "exact") String precision,
+                                             @RequestParam(defaultValue = "uri") String group) {
+        LocalDateTime startTime = LocalDateTime.parse(start, FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(end, FORMATTER);
+        log.info("GET /stats (ndjson)?start={}&end={}&uris={}&unique={}&precision={}&group={}",
+                start, end, uris, unique, precision, group);
+        StatStream stream = statService.streamStats(startTime, endTime, uris, unique, StatPrecision.from(precision),
+                StatGrouping.from(group));
+        return write(stream, false);
+    }
+
+    /**
+     * Список URI в теле запроса не упирается в длину URL. Результат пишется JSON-массивом по мере слияния частей.
+     */
+    @PostMapping(value = "/stats/query", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public StreamingResponseBody queryStats(@RequestBody StatQueryDto query) {
+        log.info("POST /stats/query: {}", query);
+        return write(toStatStream(query), true);
+    }
+
+    @PostMapping(value = "/stats/query", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.OK)
+    public StreamingResponseBody streamQueryStats(@RequestBody StatQueryDto query) {
+        log.info("POST /stats/query (ndjson): {}", query);
+        return write(toStatStream(query), false);
+    }
+
+    private StatStream toStatStream(StatQueryDto query) {
+        if (query.getStart() == null || query.getEnd() == null) {
+            throw new ValidationRequestException("Параметры 'start' и 'end' обязательны.");
+        }
+        LocalDateTime startTime = LocalDateTime.parse(query.getStart(), FORMATTER);
+        LocalDateTime endTime = LocalDateTime.parse(query.getEnd(), FORMATTER);
+        return statService.queryStats(startTime, endTime, query.getUris(), query.isUnique(),
+                StatPrecision.from(query.getPrecision() == null ? "exact" : query.getPrecision()));
+    }
+
+    /**
+     * Пишет строки по мере выдачи: JSON-массивом через запятую или NDJSON с переводом строки после каждой.
+     */
+    private StreamingResponseBody write(StatStream stream, boolean jsonArray) {
+        ObjectWriter writer = objectMapper.writerFor(StatDto.class);
+        return out -> {
+            OutputStream buffered = new BufferedOutputStream(out);
+            boolean[] first = {true};
+            if (jsonArray) {
+                buffered.write('[');
+            }
+            try {
+                stream.forEach(dto -> {
+                    try {
+                        if (jsonArray && !first[0]) {
+                            buffered.write(',');
+                        }
+                        first[0] = false;
+                        buffered.write(writer.writeValueAsBytes(dto));
+                        if (!jsonArray) {
+                            buffered.write('\n');
+                        }
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            if (jsonArray) {
+                buffered.write(']');
+            }
+            buffered.flush();
+        };
     }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package ru.practicum.counter;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+import ru.practicum.model.StatKey;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.Visitor;
+import ru.practicum.repository.HitStorage;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.snapshot.SnapshotSection;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики hit'ов за всю историю по (app, uri). Заполняются при старте из хранилища или снимка
+ * (см. {@link ru.practicum.snapshot.StatSnapshot}) и обновляются на каждом addHit, поэтому запросы /stats,
+ * диапазон которых покрывает все hit'ы, обслуживаются без обращения к хранилищу.
+ * <p>
+ * Счётчики сгруппированы по URI, и запрос со списком URI читает только их. Множество IP одного (app, uri)
+ * хранится точно до max-ips-per-uri адресов, затем заменяется скетчем HyperLogLog: уникальные посещения
+ * с precision=approx считаются по скетчу, а точные берутся из хранилища.
+ */
+@Slf4j
+@Component
+public class HitCounters {
+    private final HitStorage hitStorage;
+    private final int maxIps;
+    private volatile ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>> counters = new ConcurrentHashMap<>();
+    private final AtomicLong firstSecond = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong lastSecond = new AtomicLong(Long.MIN_VALUE);
+
+    public HitCounters(HitStorage hitStorage,
+                       @Value("${stat-server.counters.max-ips-per-uri:10000}") int maxIps) {
+        this.hitStorage = hitStorage;
+        this.maxIps = maxIps;
+    }
+
+    /**
+     * Строит счётчики полным чтением хранилища и подменяет ими текущие. При повторной загрузке
+     * приём hit'ов должен быть остановлен, а буфер сброшен.
+     */
+    public void load() {
+        ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>> loaded = new ConcurrentHashMap<>();
+        hitStorage.findTotalStats().forEach(stat ->
+                counter(loaded, stat.getApp(), stat.getUri()).hits.add(stat.getHits()));
+        hitStorage.forEachVisitor(v -> counter(loaded, v.getApp(), v.getUri()).addIp(v.getIp(), maxIps));
+        LocalDateTime first = hitStorage.findFirstTimestamp();
+        LocalDateTime last = hitStorage.findLastTimestamp();
+        counters = loaded;
+        firstSecond.set(first != null ? toSecond(first) : Long.MAX_VALUE);
+        lastSecond.set(last != null ? toSecond(last) : Long.MIN_VALUE);
+        log.info("Загружены счётчики hit'ов для {} URI", loaded.size());
+    }
+
+    /**
+     * Копирует границы истории и счётчики вместе с множествами IP. Вызывается при остановленном приёме hit'ов,
+     * копия записывается в снимок уже после его возобновления.
+     */
+    public SnapshotSection copy() {
+        long first = firstSecond.get();
+        long last = lastSecond.get();
+        List<Map.Entry<StatKey, Counter>> copied = new ArrayList<>();
+        counters.forEach((uri, apps) -> apps.forEach((app, counter) ->
+                copied.add(Map.entry(new StatKey(app, uri), counter.copy()))));
+        return out -> {
+            out.writeLong(first);
+            out.writeLong(last);
+            out.writeInt(copied.size());
+            for (Map.Entry<StatKey, Counter> entry : copied) {
+                Counter counter = entry.getValue();
+                out.writeUTF(entry.getKey().getApp());
+                out.writeUTF(entry.getKey().getUri());
+                out.writeLong(counter.hits.sum());
+                if (counter.ips != null) {
+                    out.writeInt(counter.ips.size());
+                    for (String ip : counter.ips) {
+                        out.write(IpMapper.toBytes(ip));
+                    }
+                } else {
+                    // -1: множество IP заменено скетчем, -2: скетч устарел после удаления старых hit'ов
+                    out.writeInt(counter.sketch != null ? -1 : -2);
+                    if (counter.sketch != null) {
+                        byte[] sketch = counter.sketch.toBytes();
+                        out.writeInt(sketch.length);
+                        out.write(sketch);
+                    }
+                }
+            }
+        };
+    }
+
+    public void restore(DataInput in) throws IOException {
+        firstSecond.set(in.readLong());
+        lastSecond.set(in.readLong());
+        int keys = in.readInt();
+        byte[] ip = new byte[IpMapper.IP_BYTES];
+        for (int i = 0; i < keys; i++) {
+            Counter counter = counter(counters, in.readUTF(), in.readUTF());
+            counter.hits.add(in.readLong());
+            int ips = in.readInt();
+            if (ips < 0) {
+                counter.ips = null;
+                if (ips == -1) {
+                    byte[] sketch = new byte[in.readInt()];
+                    in.readFully(sketch);
+                    counter.sketch = HyperLogLog.fromBytes(sketch);
+                }
+                continue;
+            }
+            for (int j = 0; j < ips; j++) {
+                in.readFully(ip);
+                counter.addIp(IpMapper.fromBytes(ip), maxIps);
+            }
+        }
+        log.info("Из снимка восстановлены счётчики hit'ов для {} URI", counters.size());
+    }
+
+    public void record(Hit hit) {
+        Counter counter = counter(counters, hit.getApp(), hit.getUri());
+        counter.hits.increment();
+        counter.addIp(hit.getIp(), maxIps);
+        updateBounds(hit.getTimestamp());
+    }
+
+    /**
+     * Вычитает hit'ы, удалённые из БД по сроку хранения: все они были раньше boundary.
+     */
+    public void evict(List<Stat> removedHits, List<Visitor> removedVisitors, LocalDateTime boundary) {
+        removedHits.forEach(stat -> counter(counters, stat.getApp(), stat.getUri()).hits.add(-stat.getHits()));
+        removedVisitors.forEach(v -> counter(counters, v.getApp(), v.getUri()).removeIp(v.getIp()));
+        firstSecond.accumulateAndGet(toSecond(boundary), Math::max);
+    }
+
+    public boolean coversAllHistory(LocalDateTime start, LocalDateTime end) {
+        return toSecond(start) <= firstSecond.get() && toSecond(end) >= lastSecond.get();
+    }
+
+    /**
+     * @return статистика за всю историю или null, если уникальные посещения какого-то URI из ответа нельзя
+     * посчитать по счётчикам с нужной точностью и статистику нужно взять из хранилища
+     */
+    public List<Stat> getStats(List<String> uris, boolean unique, StatPrecision precision) {
+        Map<String, ConcurrentHashMap<String, Counter>> current = counters;
+        Iterable<String> selected = uris == null ? current.keySet() : new LinkedHashSet<>(uris);
+        List<Stat> stats = new ArrayList<>();
+        for (String uri : selected) {
+            Map<String, Counter> apps = current.get(uri);
+            if (apps == null) {
+                continue;
+            }
+            for (Map.Entry<String, Counter> app : apps.entrySet()) {
+                long hits = app.getValue().hits.sum();
+                if (hits <= 0) {
+                    continue;
+                }
+                if (unique) {
+                    hits = app.getValue().unique(precision);
+                    if (hits < 0) {
+                        return null;
+                    }
+                }
+                stats.add(new Stat(app.getKey(), uri, hits));
+            }
+        }
+        stats.sort(Comparator.comparing(Stat::getHits).reversed());
+        return stats;
+    }
+
+    private static Counter counter(ConcurrentHashMap<String, ConcurrentHashMap<String, Counter>> counters,
+                                   String app, String uri) {
+        return counters.computeIfAbsent(uri, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(app, k -> new Counter());
+    }
+
+    private void updateBounds(LocalDateTime timestamp) {
+        long second = toSecond(timestamp);
+        firstSecond.accumulateAndGet(second, Math::min);
+        lastSecond.accumulateAndGet(second, Math::max);
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static final class Counter {
+        private final LongAdder hits = new LongAdder();
+        private Set<String> ips = new HashSet<>();
+        private HyperLogLog sketch;
+
+        private synchronized void addIp(String ip, int maxIps) {
+            if (ips == null) {
+                if (sketch != null) {
+                    sketch.add(ip);
+                }
+                return;
+            }
+            if (ips.add(ip) && ips.size() > maxIps) {
+                sketch = new HyperLogLog();
+                ips.forEach(sketch::add);
+                ips = null;
+            }
+        }
+
+        private synchronized void removeIp(String ip) {
+            if (ips != null) {
+                ips.remove(ip);
+            } else {
+                // из скетча нельзя удалить адрес, дальше уникальные посещения считаются по хранилищу
+                sketch = null;
+            }
+        }
+
+        /**
+         * @return число уникальных IP или -1, если его нельзя посчитать с такой точностью
+         */
+        private synchronized long unique(StatPrecision precision) {
+            if (ips != null) {
+                return ips.size();
+            }
+            return precision == StatPrecision.APPROX && sketch != null ? sketch.estimate() : -1;
+        }
+
+        private synchronized Counter copy() {
+            Counter copy = new Counter();
+            copy.hits.add(hits.sum());
+            copy.ips = ips != null ? new HashSet<>(ips) : null;
+            copy.sketch = sketch != null ? HyperLogLog.fromBytes(sketch.toBytes()) : null;
+            return copy;
+        }
+    }
+}
\ No newline at end of file
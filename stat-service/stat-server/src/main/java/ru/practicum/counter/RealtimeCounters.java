@@ -0,0 +1,158 @@
+package ru.practicum.counter;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.dictionary.UriTrie;
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hit'ы за последние минуты по (app, uri) для виджетов «сейчас популярно». Для каждой пары хранится кольцо
+ * посекундных слотов: в одном long старшие 32 бита — секунда слота, младшие — счётчик, поэтому addHit
+ * обновляет слот одним CAS без блокировок. Hit'ы с timestamp в будущем учитываются в текущей секунде,
+ * hit'ы старше кольца пропускаются. Кольца без hit'ов дольше максимального окна удаляются.
+ */
+@Slf4j
+@Component
+public class RealtimeCounters {
+    private static final long COUNT_MASK = 0xFFFFFFFFL;
+
+    @Getter
+    private final int maxWindowSeconds;
+    private final Map<String, Map<String, Ring>> rings = new ConcurrentHashMap<>();
+
+    public RealtimeCounters(@Value("${stat-server.realtime.max-window-seconds:900}") int maxWindowSeconds) {
+        this.maxWindowSeconds = maxWindowSeconds;
+    }
+
+    public void record(Hit hit) {
+        long now = now();
+        long second = Math.min(toSecond(hit.getTimestamp()), now);
+        if (second <= now - maxWindowSeconds) {
+            return;
+        }
+        rings.computeIfAbsent(hit.getUri(), uri -> new ConcurrentHashMap<>())
+                .computeIfAbsent(hit.getApp(), app -> new Ring(maxWindowSeconds))
+                .increment(second);
+    }
+
+    /**
+     * Hit'ы за последние windowSeconds секунд, включая текущую. URI вида /events/* раскрываются по префиксу.
+     */
+    public List<Stat> getStats(List<String> uris, int windowSeconds) {
+        long now = now();
+        long from = now - windowSeconds + 1;
+        Set<String> matched = new LinkedHashSet<>();
+        if (uris == null) {
+            matched.addAll(rings.keySet());
+        } else {
+            for (String uri : uris) {
+                if (UriTrie.isPattern(uri)) {
+                    String prefix = UriTrie.prefixOf(uri);
+                    rings.keySet().stream().filter(candidate -> candidate.startsWith(prefix)).forEach(matched::add);
+                } else {
+                    matched.add(uri);
+                }
+            }
+        }
+        List<Stat> result = new ArrayList<>();
+        for (String uri : matched) {
+            Map<String, Ring> apps = rings.get(uri);
+            if (apps != null) {
+                apps.forEach((app, ring) -> {
+                    long hits = ring.sum(from, now);
+                    if (hits > 0) {
+                        result.add(new Stat(app, uri, hits));
+                    }
+                });
+            }
+        }
+        result.sort(Comparator.comparing(Stat::getHits).reversed());
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${stat-server.realtime.cleanup-interval-ms:60000}")
+    public void evictIdle() {
+        long boundary = now() - maxWindowSeconds;
+        int removed = 0;
+        for (Map<String, Ring> apps : rings.values()) {
+            for (Map.Entry<String, Ring> entry : apps.entrySet()) {
+                if (entry.getValue().lastSecond() <= boundary && apps.remove(entry.getKey(), entry.getValue())) {
+                    removed++;
+                }
+            }
+        }
+        rings.values().removeIf(Map::isEmpty);
+        if (removed > 0) {
+            log.debug("Удалено {} неактивных колец счётчиков реального времени", removed);
+        }
+    }
+
+    private static long now() {
+        return toSecond(LocalDateTime.now());
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static final class Ring {
+        private final AtomicLongArray slots;
+
+        private Ring(int size) {
+            this.slots = new AtomicLongArray(size);
+        }
+
+        private void increment(long second) {
+            int index = (int) (second % slots.length());
+            while (true) {
+                long slot = slots.get(index);
+                long slotSecond = slot >>> 32;
+                long next;
+                if (slotSecond == second) {
+                    next = slot + 1;
+                } else if (slotSecond < second) {
+                    next = second << 32 | 1;
+                } else {
+                    return;
+                }
+                if (slots.compareAndSet(index, slot, next)) {
+                    return;
+                }
+            }
+        }
+
+        private long sum(long from, long to) {
+            long sum = 0;
+            for (long second = from; second <= to; second++) {
+                long slot = slots.get((int) (second % slots.length()));
+                if (slot >>> 32 == second) {
+                    sum += slot & COUNT_MASK;
+                }
+            }
+            return sum;
+        }
+
+        private long lastSecond() {
+            long last = 0;
+            for (int i = 0; i < slots.length(); i++) {
+                last = Math.max(last, slots.get(i) >>> 32);
+            }
+            return last;
+        }
+    }
+}
\ No newline at end of file
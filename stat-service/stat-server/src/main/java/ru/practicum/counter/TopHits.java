@@ -0,0 +1,182 @@
+package ru.practicum.counter;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+import ru.practicum.model.StatKey;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.TopWindow;
+import ru.practicum.repository.HitStorage;
+import ru.practicum.sketch.SpaceSaving;
+import ru.practicum.snapshot.SnapshotSection;
+
+import java.io.DataInput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Самые посещаемые URI за последний час, сутки и неделю. Каждое окно — кольцо слотов со сводкой Space-Saving,
+ * слоты заполняются при старте из хранилища или снимка и обновляются на каждом addHit, а запрос складывает
+ * сводки слотов окна без обращения к хранилищу.
+ */
+@Slf4j
+@Component
+public class TopHits {
+    private final HitStorage hitStorage;
+    @Getter
+    private final int capacity;
+    private final Map<TopWindow, Slot[]> windows = new EnumMap<>(TopWindow.class);
+
+    public TopHits(HitStorage hitStorage, @Value("${stat-server.top.capacity:1000}") int capacity) {
+        this.hitStorage = hitStorage;
+        this.capacity = capacity;
+        for (TopWindow window : TopWindow.values()) {
+            Slot[] slots = new Slot[window.getSlots()];
+            for (int i = 0; i < slots.length; i++) {
+                slots[i] = new Slot();
+            }
+            windows.put(window, slots);
+        }
+    }
+
+    public void load() {
+        long now = toSecond(LocalDateTime.now());
+        for (TopWindow window : TopWindow.values()) {
+            long slotSeconds = window.getSlotSeconds();
+            long current = now / slotSeconds;
+            for (long index = current - window.getSlots() + 1; index <= current; index++) {
+                LocalDateTime start = toTime(index * slotSeconds);
+                LocalDateTime end = toTime((index + 1) * slotSeconds - 1);
+                for (Stat stat : hitStorage.findStats(start, end, null, false, StatPrecision.EXACT)) {
+                    add(window, index, new StatKey(stat.getApp(), stat.getUri()), stat.getHits());
+                }
+            }
+        }
+        log.info("Загружены топы URI за окна {}", windows.keySet());
+    }
+
+    /**
+     * Копирует номера и сводки всех слотов всех окон. Вызывается при остановленном приёме hit'ов,
+     * копия записывается в снимок уже после его возобновления.
+     */
+    public SnapshotSection copy() {
+        Map<TopWindow, long[]> indexes = new EnumMap<>(TopWindow.class);
+        Map<TopWindow, List<List<Stat>>> summaries = new EnumMap<>(TopWindow.class);
+        for (TopWindow window : TopWindow.values()) {
+            Slot[] slots = windows.get(window);
+            long[] slotIndexes = new long[slots.length];
+            List<List<Stat>> slotSummaries = new ArrayList<>(slots.length);
+            for (int i = 0; i < slots.length; i++) {
+                List<Stat> entries = new ArrayList<>();
+                synchronized (slots[i]) {
+                    slotIndexes[i] = slots[i].index;
+                    if (slots[i].summary != null) {
+                        slots[i].summary.forEach((key, count) -> entries.add(new Stat(key.getApp(), key.getUri(), count)));
+                    }
+                }
+                slotSummaries.add(entries);
+            }
+            indexes.put(window, slotIndexes);
+            summaries.put(window, slotSummaries);
+        }
+        return out -> {
+            for (TopWindow window : TopWindow.values()) {
+                long[] slotIndexes = indexes.get(window);
+                out.writeInt(slotIndexes.length);
+                for (int i = 0; i < slotIndexes.length; i++) {
+                    List<Stat> entries = summaries.get(window).get(i);
+                    out.writeLong(slotIndexes[i]);
+                    out.writeInt(entries.size());
+                    for (Stat entry : entries) {
+                        out.writeUTF(entry.getApp());
+                        out.writeUTF(entry.getUri());
+                        out.writeLong(entry.getHits());
+                    }
+                }
+            }
+        };
+    }
+
+    public void restore(DataInput in) throws IOException {
+        for (TopWindow window : TopWindow.values()) {
+            int slots = in.readInt();
+            for (int i = 0; i < slots; i++) {
+                long index = in.readLong();
+                int entries = in.readInt();
+                for (int j = 0; j < entries; j++) {
+                    add(window, index, new StatKey(in.readUTF(), in.readUTF()), in.readLong());
+                }
+            }
+        }
+        log.info("Из снимка восстановлены топы URI за окна {}", windows.keySet());
+    }
+
+    public void record(Hit hit) {
+        StatKey key = new StatKey(hit.getApp(), hit.getUri());
+        long second = toSecond(hit.getTimestamp());
+        for (TopWindow window : TopWindow.values()) {
+            add(window, second / window.getSlotSeconds(), key, 1);
+        }
+    }
+
+    public List<Stat> getTop(int n, TopWindow window) {
+        long current = toSecond(LocalDateTime.now()) / window.getSlotSeconds();
+        Map<StatKey, Long> totals = new HashMap<>();
+        for (Slot slot : windows.get(window)) {
+            synchronized (slot) {
+                if (slot.index > current - window.getSlots() && slot.index <= current) {
+                    slot.summary.forEach((key, count) -> totals.merge(key, count, Long::sum));
+                }
+            }
+        }
+        PriorityQueue<Map.Entry<StatKey, Long>> top = new PriorityQueue<>(Map.Entry.comparingByValue());
+        for (Map.Entry<StatKey, Long> entry : totals.entrySet()) {
+            top.offer(entry);
+            if (top.size() > n) {
+                top.poll();
+            }
+        }
+        List<Stat> result = new ArrayList<>(top.size());
+        top.forEach(e -> result.add(new Stat(e.getKey().getApp(), e.getKey().getUri(), e.getValue())));
+        result.sort(Comparator.comparing(Stat::getHits).reversed());
+        return result;
+    }
+
+    private void add(TopWindow window, long index, StatKey key, long weight) {
+        Slot[] slots = windows.get(window);
+        Slot slot = slots[(int) Math.floorMod(index, (long) slots.length)];
+        synchronized (slot) {
+            if (slot.index < index) {
+                slot.index = index;
+                slot.summary = new SpaceSaving<>(capacity);
+            }
+            if (slot.index == index) {
+                slot.summary.add(key, weight);
+            }
+        }
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toTime(long second) {
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+    }
+
+    private static final class Slot {
+        private long index = Long.MIN_VALUE;
+        private SpaceSaving<StatKey> summary;
+    }
+}
\ No newline at end of file
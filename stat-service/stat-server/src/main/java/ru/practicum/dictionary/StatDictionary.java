@@ -0,0 +1,104 @@
+package ru.practicum.dictionary;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.model.Hit;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Словари приложений и URI: таблица statistics хранит целочисленные идентификаторы вместо строк.
+ * Идентификаторы никогда не меняются, поэтому кэшируются без срока жизни.
+ */
+@Component
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+public class StatDictionary {
+    private static final String APPS = "apps";
+    private static final String URIS = "uris";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate requiresNew;
+    private final Map<String, Integer> appIds = new ConcurrentHashMap<>();
+    private final Map<String, Integer> uriIds = new ConcurrentHashMap<>();
+
+    public StatDictionary(NamedParameterJdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.requiresNew = new TransactionTemplate(transactionManager);
+        this.requiresNew.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+    }
+
+    /**
+     * Проставляет hit'ам идентификаторы приложения и URI, добавляя недостающие значения в словари.
+     * Новые значения фиксируются в отдельной транзакции, чтобы откат сохранения hit'ов
+     * не оставил в кэше идентификаторы, которых нет в базе.
+     */
+    public void resolve(List<Hit> hits) {
+        insertMissing(APPS, appIds, hits, Hit::getApp);
+        insertMissing(URIS, uriIds, hits, Hit::getUri);
+        for (Hit hit : hits) {
+            hit.setAppId(appIds.get(hit.getApp()));
+            hit.setUriId(uriIds.get(hit.getUri()));
+        }
+    }
+
+    /**
+     * Возвращает идентификаторы известных URI; URI, по которым не было ни одного hit'а, пропускаются.
+     */
+    public List<Integer> findUriIds(Collection<String> uris) {
+        Set<String> missing = uris.stream()
+                .filter(uri -> !uriIds.containsKey(uri))
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (!missing.isEmpty()) {
+            load(URIS, uriIds, missing);
+        }
+        return uris.stream()
+                .map(uriIds::get)
+                .filter(Objects::nonNull)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    public List<String> findAllUris() {
+        return jdbcTemplate.getJdbcTemplate().queryForList("SELECT name FROM " + URIS, String.class);
+    }
+
+    private void insertMissing(String table, Map<String, Integer> cache, List<Hit> hits,
+                               Function<Hit, String> name) {
+        Set<String> missing = hits.stream()
+                .map(name)
+                .filter(value -> !cache.containsKey(value))
+                .collect(Collectors.toCollection(TreeSet::new));
+        if (missing.isEmpty()) {
+            return;
+        }
+        requiresNew.executeWithoutResult(status -> {
+            MapSqlParameterSource[] batch = missing.stream()
+                    .map(value -> new MapSqlParameterSource("name", value))
+                    .toArray(MapSqlParameterSource[]::new);
+            jdbcTemplate.batchUpdate("INSERT INTO " + table + " (name) VALUES (:name) ON CONFLICT (name) DO NOTHING",
+                    batch);
+        });
+        load(table, cache, missing);
+    }
+
+    private void load(String table, Map<String, Integer> cache, Set<String> names) {
+        jdbcTemplate.query("SELECT id, name FROM " + table + " WHERE name IN (:names)",
+                new MapSqlParameterSource("names", names),
+                rs -> {
+                    cache.put(rs.getString("name"), rs.getInt("id"));
+                });
+    }
+}
\ No newline at end of file
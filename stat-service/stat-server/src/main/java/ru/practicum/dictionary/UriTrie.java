@@ -0,0 +1,143 @@
+package ru.practicum.dictionary;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import ru.practicum.exceptions.ValidationRequestException;
+import ru.practicum.repository.HitStorage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Префиксное дерево всех известных URI. Раскрывает шаблоны вида /events/* в список URI до агрегации.
+ * Заполняется при старте из хранилища или снимка и пополняется на каждом addHit.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UriTrie {
+    public static final String WILDCARD = "*";
+
+    private final HitStorage hitStorage;
+    private final Node root = new Node();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    public void load() {
+        List<String> uris = hitStorage.findUris();
+        uris.forEach(this::add);
+        log.info("Загружено {} URI в префиксное дерево", uris.size());
+    }
+
+    public void save(DataOutput out) throws IOException {
+        List<String> uris = expand("");
+        out.writeInt(uris.size());
+        for (String uri : uris) {
+            out.writeUTF(uri);
+        }
+    }
+
+    public void restore(DataInput in) throws IOException {
+        int uris = in.readInt();
+        for (int i = 0; i < uris; i++) {
+            add(in.readUTF());
+        }
+        log.info("Из снимка восстановлено {} URI в префиксное дерево", uris);
+    }
+
+    public void add(String uri) {
+        lock.readLock().lock();
+        try {
+            Node node = find(uri);
+            if (node != null && node.terminal) {
+                return;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            Node node = root;
+            for (int i = 0; i < uri.length(); i++) {
+                node = node.children.computeIfAbsent(uri.charAt(i), c -> new Node());
+            }
+            node.terminal = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Заменяет шаблоны с '*' в конце на все известные URI с этим префиксом, остальные URI оставляет как есть.
+     */
+    public List<String> resolve(List<String> uris) {
+        Set<String> result = new LinkedHashSet<>();
+        for (String uri : uris) {
+            if (isPattern(uri)) {
+                result.addAll(expand(prefixOf(uri)));
+            } else {
+                result.add(uri);
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    public List<String> expand(String prefix) {
+        List<String> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            Node node = find(prefix);
+            if (node != null) {
+                collect(node, new StringBuilder(prefix), result);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    public static boolean isPattern(String uri) {
+        int wildcard = uri.indexOf(WILDCARD);
+        if (wildcard >= 0 && wildcard != uri.length() - 1) {
+            throw new ValidationRequestException("Символ '*' допускается только в конце URI: " + uri);
+        }
+        return wildcard >= 0;
+    }
+
+    public static String prefixOf(String pattern) {
+        return pattern.substring(0, pattern.length() - WILDCARD.length());
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private static void collect(Node node, StringBuilder path, List<String> result) {
+        if (node.terminal) {
+            result.add(path.toString());
+        }
+        for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+            path.append(child.getKey());
+            collect(child.getValue(), path, result);
+            path.setLength(path.length() - 1);
+        }
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private boolean terminal;
+    }
+}
\ No newline at end of file
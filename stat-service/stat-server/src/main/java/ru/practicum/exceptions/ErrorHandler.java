@@ -1,8 +1,10 @@
 package ru.practicum.exceptions;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
 import ru.practicum.controller.StatController;
 
@@ -12,10 +14,21 @@ import java.time.format.DateTimeFormatter;
 @RestControllerAdvice(assignableTypes = {StatController.class})
 public class ErrorHandler {
 
+    // тип задан явно: иначе ошибку нельзя отдать клиенту, запросившему application/x-ndjson
     @ExceptionHandler
-    @ResponseStatus(HttpStatus.BAD_REQUEST)
-    public ApiError handleValidationException(ValidationRequestException e) {
-        return new ApiError("BAD_REQUEST", "Incorrectly made request.",
-                            e.getMessage(), LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+    public ResponseEntity<ApiError> handleValidationException(ValidationRequestException e) {
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new ApiError("BAD_REQUEST", "Incorrectly made request.",
+                        e.getMessage(), LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))));
+    }
+
+    @ExceptionHandler
+    public ResponseEntity<ApiError> handleIngestOverloadException(IngestOverloadException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(new ApiError("SERVICE_UNAVAILABLE", "Stat server is overloaded.",
+                        e.getMessage(), LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss"))));
     }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package ru.practicum.exceptions;
+
+import lombok.Getter;
+
+@Getter
+public class IngestOverloadException extends RuntimeException {
+    private final int retryAfterSeconds;
+
+    public IngestOverloadException(String message, int retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package ru.practicum.ingest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.CleanupFailureDataAccessException;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.NonTransientDataAccessException;
+import org.springframework.dao.NonTransientDataAccessResourceException;
+import ru.practicum.model.Hit;
+import ru.practicum.repository.HitStorage;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * Запись пакета hit'ов, в котором хранилище может не принять отдельные hit'ы. Если хранилище отклоняет
+ * сами данные, пакет делится пополам, пока не останутся отдельные hit'ы с ошибкой; остальные записываются.
+ * Части пишутся по порядку, поэтому записанные и отклонённые hit'ы всегда составляют начало пакета.
+ */
+@Slf4j
+final class HitBatchWriter {
+
+    private HitBatchWriter() {
+    }
+
+    /**
+     * @param rejected получает hit'ы, которые хранилище не принимает, с ошибкой записи
+     * @return сколько hit'ов из начала пакета записано или отклонено; остаток не записан из-за временной ошибки
+     * @throws RuntimeException если из-за временной ошибки хранилища не записан ни один hit
+     */
+    static int write(HitStorage hitStorage, List<Hit> batch, BiConsumer<Hit, RuntimeException> rejected) {
+        Deque<List<Hit>> parts = new ArrayDeque<>();
+        parts.push(batch);
+        int written = 0;
+        while (!parts.isEmpty()) {
+            List<Hit> part = parts.pop();
+            try {
+                hitStorage.saveAll(part);
+                written += part.size();
+            } catch (RuntimeException e) {
+                if (!isDataError(e)) {
+                    if (written == 0) {
+                        throw e;
+                    }
+                    log.warn("Ошибка записи части пакета, не записано {} hit'ов: {}", batch.size() - written,
+                            e.getMessage());
+                    return written;
+                }
+                if (part.size() == 1) {
+                    rejected.accept(part.get(0), e);
+                    written++;
+                } else {
+                    if (part == batch) {
+                        log.warn("Хранилище не приняло пакет из {} hit'ов, ищем hit'ы с ошибкой: {}", batch.size(),
+                                e.getMessage());
+                    }
+                    int middle = part.size() / 2;
+                    parts.push(part.subList(middle, part.size()));
+                    parts.push(part.subList(0, middle));
+                }
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return true, если хранилище не примет эти hit'ы и при повторе (нарушение ограничений БД, некорректные
+     * значения), false для временных ошибок: недоступная БД, нет соединения, ошибка ввода-вывода
+     */
+    static boolean isDataError(RuntimeException e) {
+        if (e instanceof NonTransientDataAccessException) {
+            return !(e instanceof DataAccessResourceFailureException
+                    || e instanceof NonTransientDataAccessResourceException
+                    || e instanceof CleanupFailureDataAccessException);
+        }
+        return e instanceof IllegalArgumentException || e instanceof NullPointerException;
+    }
+}
\ No newline at end of file
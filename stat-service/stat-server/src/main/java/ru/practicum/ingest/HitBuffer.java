@@ -0,0 +1,304 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.exceptions.IngestOverloadException;
+import ru.practicum.model.Hit;
+import ru.practicum.repository.HitStorage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченный буфер отложенной записи hit'ов.
+ * Сбрасывается в хранилище пакетами при достижении batch-size, по таймеру и при остановке приложения.
+ * Запись идёт в фоновом потоке: поток запроса только занимает место в буфере и никогда не ждёт БД.
+ * Место освобождается после успешной записи, поэтому при медленной БД буфер заполняется,
+ * и новые hit'ы отклоняются или отбрасываются согласно {@link OverloadPolicy}.
+ * <p>
+ * Принятый hit сначала пишется в {@link HitWal}, и приём завершается после fsync журнала. Hit'ы уходят
+ * в хранилище в порядке журнала: при временной ошибке хранилища непринятый пакет возвращается в начало очереди.
+ * Если хранилище не принимает сами данные, пакет делится пополам, пока не останутся отдельные hit'ы
+ * с ошибкой; они пишутся в журнал приложения и считаются в stat.ingest.dead-letter, а остальные записываются.
+ * <p>
+ * Запросы статистики не ждут записи буфера: {@link #readWithPending} даёт им ещё не записанные hit'ы так,
+ * что каждый принятый hit виден либо в хранилище, либо среди них.
+ */
+@Slf4j
+@Component
+public class HitBuffer {
+    private static final int OPTIMISTIC_READS = 2;
+
+    private final HitStorage hitStorage;
+    private final HitWal hitWal;
+    private final BlockingDeque<Hit> queue = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final int capacity;
+    private final int batchSize;
+    private final OverloadPolicy overloadPolicy;
+    private final int retryAfterSeconds;
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // запись пакета: перенос из очереди в хранилище, который читатель не должен застать наполовину
+    private final StampedLock batchLock = new StampedLock();
+    private final AtomicBoolean flushPending = new AtomicBoolean();
+    private final ExecutorService flusher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "hit-flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Counter rejected;
+    private final Counter dropped;
+    private final Counter deadLetters;
+    private long enqueued;
+    private long flushedCount;
+    private volatile long flushLimit = Long.MAX_VALUE;
+
+    public HitBuffer(HitStorage hitStorage,
+                     HitWal hitWal,
+                     MeterRegistry meterRegistry,
+                     @Value("${stat-server.buffer.capacity:10000}") int capacity,
+                     @Value("${stat-server.buffer.batch-size:500}") int batchSize,
+                     @Value("${stat-server.buffer.overload-policy:reject}") OverloadPolicy overloadPolicy,
+                     @Value("${stat-server.buffer.retry-after-seconds:1}") int retryAfterSeconds) {
+        this.hitStorage = hitStorage;
+        this.hitWal = hitWal;
+        this.permits = new Semaphore(capacity);
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.overloadPolicy = overloadPolicy;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.rejected = Counter.builder("stat.ingest.rejected").register(meterRegistry);
+        this.dropped = Counter.builder("stat.ingest.dropped").register(meterRegistry);
+        this.deadLetters = Counter.builder("stat.ingest.dead-letter").register(meterRegistry);
+        Gauge.builder("stat.ingest.queue.depth", this, HitBuffer::size).register(meterRegistry);
+        Gauge.builder("stat.ingest.queue.capacity", this, buffer -> buffer.capacity).register(meterRegistry);
+        log.info("Буфер hit'ов: ёмкость {}, при переполнении {}", capacity, overloadPolicy);
+    }
+
+    /**
+     * @return false, если hit отброшен из-за переполнения буфера
+     * @throws IngestOverloadException если буфер заполнен и политика переполнения REJECT
+     */
+    public boolean add(Hit hit) {
+        if (admit(1) == 0) {
+            return false;
+        }
+        long lsn = enqueue(List.of(hit));
+        scheduleFlush();
+        hitWal.awaitSync(lsn);
+        return true;
+    }
+
+    /**
+     * Пакет принимается целиком или, при политике REJECT, отклоняется целиком, чтобы повтор клиента
+     * не записал часть hit'ов дважды. При политике DROP принимается начало пакета, на которое хватило места.
+     *
+     * @return принятые hit'ы
+     */
+    public List<Hit> addAll(List<Hit> hits) {
+        List<Hit> accepted = hits.subList(0, admit(hits.size()));
+        long lsn = enqueue(accepted);
+        scheduleFlush();
+        hitWal.awaitSync(lsn);
+        return accepted;
+    }
+
+    public int size() {
+        return capacity - permits.availablePermits();
+    }
+
+    @Scheduled(fixedDelayString = "${stat-server.buffer.flush-interval-ms:1000}")
+    public void flushScheduled() {
+        if (!queue.isEmpty()) {
+            flush();
+        }
+    }
+
+    /**
+     * Синхронно записывает в хранилище всё накопленное содержимое буфера.
+     *
+     * @return количество записанных hit'ов
+     */
+    public int flush() {
+        flushLock.lock();
+        try {
+            return drain(flushLimit);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Запрещает записывать в хранилище hit'ы, принятые после этого вызова, до {@link #flushHeld}.
+     * Вызывается при остановленном приёме hit'ов, поэтому все hit'ы в очереди приняты до запрета.
+     */
+    public void holdFlushes() {
+        appendLock.lock();
+        try {
+            flushLimit = enqueued;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Записывает в хранилище hit'ы, принятые до {@link #holdFlushes}, выполняет action, пока следующие
+     * ещё не записаны, и снимает запрет.
+     */
+    public <T> T flushHeld(Supplier<T> action) {
+        flushLock.lock();
+        try {
+            drain(flushLimit);
+            return action.get();
+        } finally {
+            flushLimit = Long.MAX_VALUE;
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Выполняет query над хранилищем и снимком hit'ов, ещё не записанных в него. Если во время запроса буфер
+     * записал пакет, запрос повторяется; после нескольких неудачных попыток пакеты не пишутся до конца запроса.
+     */
+    public <T> T readWithPending(Function<List<Hit>, T> query) {
+        for (int i = 0; i < OPTIMISTIC_READS; i++) {
+            long stamp = batchLock.tryOptimisticRead();
+            if (stamp != 0) {
+                T result = query.apply(new ArrayList<>(queue));
+                if (batchLock.validate(stamp)) {
+                    return result;
+                }
+            }
+        }
+        long stamp = batchLock.readLock();
+        try {
+            return query.apply(new ArrayList<>(queue));
+        } finally {
+            batchLock.unlockRead(stamp);
+        }
+    }
+
+    @PreDestroy
+    public void drain() {
+        flusher.shutdown();
+        log.info("Остановка: сбрасываем {} hit'ов из буфера", queue.size());
+        flush();
+    }
+
+    private int drain(long position) {
+        int flushed = 0;
+        List<Hit> batch = new ArrayList<>(batchSize);
+        while (flushedCount < position) {
+            int written;
+            long stamp = batchLock.writeLock();
+            try {
+                if (queue.drainTo(batch, (int) Math.min(batchSize, position - flushedCount)) == 0) {
+                    break;
+                }
+                written = write(batch);
+            } finally {
+                batchLock.unlockWrite(stamp);
+            }
+            hitWal.drained(written);
+            permits.release(written);
+            flushedCount += written;
+            flushed += written;
+            batch.clear();
+        }
+        if (flushed > 0) {
+            log.debug("Сброшено в хранилище {} hit'ов", flushed);
+        }
+        return flushed;
+    }
+
+    private int admit(int count) {
+        if (permits.tryAcquire(count)) {
+            return count;
+        }
+        if (overloadPolicy == OverloadPolicy.REJECT) {
+            rejected.increment(count);
+            log.warn("Буфер hit'ов заполнен ({} из {}), отклонено {} hit'ов", size(), capacity, count);
+            throw new IngestOverloadException("Буфер hit'ов заполнен, повторите запрос позже.", retryAfterSeconds);
+        }
+        int available = permits.drainPermits();
+        int granted = Math.min(count, available);
+        permits.release(available - granted);
+        dropped.increment(count - granted);
+        log.debug("Буфер hit'ов заполнен, отброшено {} hit'ов", count - granted);
+        return granted;
+    }
+
+    // порядок hit'ов в очереди совпадает с порядком в журнале
+    private long enqueue(List<Hit> hits) {
+        appendLock.lock();
+        try {
+            long lsn = hitWal.append(hits);
+            queue.addAll(hits);
+            enqueued += hits.size();
+            return lsn;
+        } catch (RuntimeException e) {
+            permits.release(hits.size());
+            throw e;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private void scheduleFlush() {
+        if (queue.size() >= batchSize && flushPending.compareAndSet(false, true)) {
+            flusher.execute(() -> {
+                flushPending.set(false);
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    log.debug("Фоновый сброс не удался, hit'ы остаются в буфере до следующей попытки");
+                }
+            });
+        }
+    }
+
+    /**
+     * Незаписанный из-за временной ошибки хранилища остаток пакета возвращается в начало очереди,
+     * место в буфере за ним остаётся занятым.
+     *
+     * @return сколько hit'ов из начала пакета записано или отброшено
+     */
+    private int write(List<Hit> batch) {
+        int written;
+        try {
+            written = HitBatchWriter.write(hitStorage, batch, (hit, e) -> {
+                deadLetters.increment();
+                log.error("Hit отброшен, хранилище его не принимает: {}", hit, e);
+            });
+        } catch (RuntimeException e) {
+            requeue(batch);
+            log.error("Ошибка пакетной записи {} hit'ов, пакет возвращён в буфер", batch.size(), e);
+            throw e;
+        }
+        requeue(batch.subList(written, batch.size()));
+        return written;
+    }
+
+    private void requeue(List<Hit> hits) {
+        for (int i = hits.size() - 1; i >= 0; i--) {
+            queue.addFirst(hits.get(i));
+        }
+    }
+}
\ No newline at end of file
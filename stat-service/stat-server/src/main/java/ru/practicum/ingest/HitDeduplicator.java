@@ -0,0 +1,230 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Hit;
+import ru.practicum.sketch.BloomFilter;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Подавляет повторные hit'ы с тем же (app, uri, ip), пришедшие в пределах окна: повторы запросов и обновления
+ * страницы браузером. Окно делится на SLICES интервалов по времени hit'а, у каждого интервала свой фильтр Блума.
+ * Фильтр устаревшего интервала очищается и переиспользуется, поэтому память не зависит от потока hit'ов.
+ * Повтор ищется в интервалах на расстоянии до SLICES от интервала hit'а, то есть окно может быть превышено
+ * не больше чем на один интервал. Hit'ы старше всех хранимых интервалов, например при досылке истории,
+ * пропускаются без проверки.
+ * <p>
+ * Проверка и запоминание hit'а — один шаг {@link #tryRecord}: ключ hit'а занимается до того, как hit принят
+ * в буфер, поэтому одновременный повтор подавляется. После попытки приёма вызывается {@link #complete}:
+ * принятый hit попадает в фильтр, а ключ отклонённого освобождается, чтобы не подавить повтор клиента.
+ */
+@Slf4j
+@Component
+public class HitDeduplicator {
+    private static final int SLICES = 4;
+
+    private final boolean enabled;
+    private final Window defaultWindow;
+    private final Map<String, Window> appWindows = new HashMap<>();
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Counter> suppressed = new ConcurrentHashMap<>();
+    // hit'ы между tryRecord и complete: хеш (app, uri, ip) -> секунда hit'а
+    private final Map<Long, Long> claims = new ConcurrentHashMap<>();
+
+    /**
+     * @param appWindowSpecs окна отдельных приложений в виде app=seconds, окно 0 отключает проверку для приложения
+     */
+    public HitDeduplicator(MeterRegistry meterRegistry,
+                           @Value("${stat-server.dedup.enabled:false}") boolean enabled,
+                           @Value("${stat-server.dedup.window-seconds:10}") long windowSeconds,
+                           @Value("${stat-server.dedup.app-windows:}") String[] appWindowSpecs,
+                           @Value("${stat-server.dedup.expected-hits:100000}") long expectedHits,
+                           @Value("${stat-server.dedup.false-positive-rate:0.001}") double falsePositiveRate) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        Map<Long, Window> windows = new HashMap<>();
+        this.defaultWindow = window(windows, windowSeconds, expectedHits, falsePositiveRate);
+        for (String spec : appWindowSpecs) {
+            int separator = spec.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Окно дедупликации задаётся как app=seconds: " + spec);
+            }
+            long seconds = Long.parseLong(spec.substring(separator + 1).trim());
+            appWindows.put(spec.substring(0, separator).trim(), window(windows, seconds, expectedHits, falsePositiveRate));
+        }
+        if (enabled) {
+            log.info("Дедупликация hit'ов включена: окно {} с, окна приложений [{}]", windowSeconds,
+                    String.join(", ", appWindowSpecs));
+        }
+    }
+
+    /**
+     * Занимает ключ hit'а, если такого hit'а не было в окне и его сейчас не принимает другой запрос.
+     * После попытки приёма hit'а нужно вызвать {@link #complete(Hit, boolean)}.
+     *
+     * @return false, если hit — повтор
+     */
+    public boolean tryRecord(Hit hit) {
+        Window window = windowOf(hit.getApp());
+        if (window == null) {
+            return true;
+        }
+        long hash = hash(hit);
+        long second = second(hit);
+        Long claimed = claims.putIfAbsent(hash, second);
+        if (claimed != null && Math.abs(second - claimed) <= window.seconds) {
+            suppressed(hit.getApp());
+            return false;
+        }
+        if (window.mightContain(hash, second)) {
+            if (claimed == null) {
+                claims.remove(hash, second);
+            }
+            suppressed(hit.getApp());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Отбирает из пакета hit'ы, которых ещё не было в окне, и занимает их ключи, как {@link #tryRecord(Hit)}.
+     * Повторы внутри самого пакета тоже отбрасываются. После попытки приёма нужно вызвать
+     * {@link #complete(List, int)}.
+     */
+    public List<Hit> tryRecord(List<Hit> hits) {
+        if (!enabled) {
+            return hits;
+        }
+        List<Hit> result = new ArrayList<>(hits.size());
+        Map<Long, Long> lastSeconds = new HashMap<>();
+        for (Hit hit : hits) {
+            Window window = windowOf(hit.getApp());
+            if (window != null) {
+                long second = second(hit);
+                Long last = lastSeconds.put(hash(hit), second);
+                if (last != null && Math.abs(second - last) <= window.seconds) {
+                    suppressed(hit.getApp());
+                    continue;
+                }
+                if (!tryRecord(hit)) {
+                    continue;
+                }
+            }
+            result.add(hit);
+        }
+        return result;
+    }
+
+    /**
+     * Запоминает принятый в буфер hit и освобождает его ключ. Ключ отклонённого из-за перегрузки hit'а
+     * только освобождается: такой hit не должен подавить повтор клиента.
+     */
+    public void complete(Hit hit, boolean accepted) {
+        Window window = windowOf(hit.getApp());
+        if (window == null) {
+            return;
+        }
+        long hash = hash(hit);
+        long second = second(hit);
+        // в фильтр до освобождения ключа, чтобы повтор застал hit хотя бы в одном из них
+        if (accepted) {
+            window.put(hash, second);
+        }
+        claims.remove(hash, second);
+    }
+
+    /**
+     * @param accepted сколько hit'ов из начала пакета принято в буфер
+     */
+    public void complete(List<Hit> hits, int accepted) {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < hits.size(); i++) {
+            complete(hits.get(i), i < accepted);
+        }
+    }
+
+    private Window windowOf(String app) {
+        if (!enabled) {
+            return null;
+        }
+        return appWindows.getOrDefault(app, defaultWindow);
+    }
+
+    private void suppressed(String app) {
+        suppressed.computeIfAbsent(app, name -> Counter.builder("stat.dedup.suppressed").tag("app", name)
+                .register(meterRegistry)).increment();
+    }
+
+    private static Window window(Map<Long, Window> windows, long seconds, long expectedHits, double falsePositiveRate) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Окно дедупликации не может быть отрицательным: " + seconds);
+        }
+        if (seconds == 0) {
+            return null;
+        }
+        // приложения с одинаковым окном делят фильтры: app входит в ключ
+        return windows.computeIfAbsent(seconds, s -> new Window(s, expectedHits, falsePositiveRate));
+    }
+
+    private static long hash(Hit hit) {
+        return HyperLogLog.hash(hit.getApp() + '\n' + hit.getUri() + '\n' + hit.getIp());
+    }
+
+    private static long second(Hit hit) {
+        return hit.getTimestamp().toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static final class Window {
+        private final long seconds;
+        private final long sliceSeconds;
+        private final BloomFilter[] filters = new BloomFilter[SLICES + 1];
+        private final long[] slices = new long[SLICES + 1];
+        private long latest = Long.MIN_VALUE;
+
+        private Window(long seconds, long expectedHits, double falsePositiveRate) {
+            this.seconds = seconds;
+            this.sliceSeconds = Math.max(1, (seconds + SLICES - 1) / SLICES);
+            for (int i = 0; i < filters.length; i++) {
+                filters[i] = new BloomFilter(Math.max(1, expectedHits / SLICES), falsePositiveRate);
+                slices[i] = Long.MIN_VALUE;
+            }
+        }
+
+        private synchronized boolean mightContain(long hash, long second) {
+            long slice = Math.floorDiv(second, sliceSeconds);
+            for (int i = 0; i < filters.length; i++) {
+                if (slices[i] != Long.MIN_VALUE && Math.abs(slices[i] - slice) <= SLICES
+                        && filters[i].mightContain(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private synchronized void put(long hash, long second) {
+            long slice = Math.floorDiv(second, sliceSeconds);
+            if (latest != Long.MIN_VALUE && slice < latest - SLICES) {
+                return;
+            }
+            latest = Math.max(latest, slice);
+            int index = (int) Math.floorMod(slice, (long) filters.length);
+            if (slices[index] != slice) {
+                filters[index].clear();
+                slices[index] = slice;
+            }
+            filters[index].put(hash);
+        }
+    }
+}
\ No newline at end of file
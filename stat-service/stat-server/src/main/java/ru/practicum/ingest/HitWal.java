@@ -0,0 +1,473 @@
+package ru.practicum.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.repository.HitStorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Журнал упреждающей записи принятых hit'ов на локальном диске: hit попадает в журнал раньше, чем в буфер,
+ * поэтому падение процесса не теряет hit'ы, которые ещё не записаны в хранилище.
+ * <p>
+ * Записи копятся в памяти и сбрасываются на диск одним fsync раз в sync-interval-ms (групповая фиксация).
+ * При wait-for-sync=true приём hit'а ждёт этого fsync, при false — только постановки в очередь журнала:
+ * так hit'ы за последний интервал могут потеряться при падении ОС, но не при падении процесса.
+ * <p>
+ * Каждой записи присваивается возрастающий номер. Буфер пишет hit'ы в хранилище в порядке журнала и сообщает
+ * о записанных через {@link #drained(int)}; номер последнего записанного hit'а хранится в файле checkpoint,
+ * а файлы журнала, целиком записанные в хранилище, удаляются. При старте записи после checkpoint
+ * дописываются в хранилище. Падение между записью пакета в хранилище и обновлением checkpoint
+ * приводит к повторной записи этого пакета. Записи, которые хранилище не принимает, при этом пропускаются:
+ * они пишутся в журнал приложения и считаются в stat.wal.skipped, а checkpoint переходит за них.
+ * <p>
+ * Запись: длина (int), CRC32C (int), номер, app, uri, IP (16 байт), секунды и наносекунды времени,
+ * время ответа (-1, если не передано). Запись с неверной длиной или контрольной суммой считается
+ * недописанным хвостом и отрезается.
+ */
+@Slf4j
+@Component
+public class HitWal {
+    private static final String FILE_PREFIX = "wal-";
+    private static final String FILE_SUFFIX = ".log";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final int CHECKPOINT_SLOT = 2 * Long.BYTES + Integer.BYTES;
+    private static final int RECORD_HEADER = 2 * Integer.BYTES;
+    private static final int MAX_RECORD = 1 << 16;
+
+    private final HitStorage hitStorage;
+    private final boolean enabled;
+    private final Path dir;
+    private final long fileSize;
+    private final long syncIntervalMs;
+    private final boolean waitForSync;
+    private final int batchSize;
+    private final Counter syncs;
+    private final Counter syncedHits;
+    private final Counter skipped;
+    private final Object lock = new Object();
+    private final Deque<WalFile> files = new ArrayDeque<>();
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long lastLsn;
+    private long durableLsn;
+    private long drainedLsn;
+    private long checkpointVersion;
+    private IOException failure;
+    private boolean closed;
+    private FileChannel active;
+    private FileChannel checkpoint;
+    private Thread syncer;
+
+    public HitWal(HitStorage hitStorage,
+                  MeterRegistry meterRegistry,
+                  @Value("${stat-server.wal.enabled:true}") boolean enabled,
+                  @Value("${stat-server.wal.dir:data/wal}") String dir,
+                  @Value("${stat-server.wal.file-size-mb:64}") int fileSizeMb,
+                  @Value("${stat-server.wal.sync-interval-ms:5}") long syncIntervalMs,
+                  @Value("${stat-server.wal.wait-for-sync:true}") boolean waitForSync,
+                  @Value("${stat-server.buffer.batch-size:500}") int batchSize) {
+        this.hitStorage = hitStorage;
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.fileSize = fileSizeMb * 1024L * 1024L;
+        this.syncIntervalMs = syncIntervalMs;
+        this.waitForSync = waitForSync;
+        this.batchSize = batchSize;
+        this.syncs = Counter.builder("stat.wal.syncs").register(meterRegistry);
+        this.syncedHits = Counter.builder("stat.wal.synced.hits").register(meterRegistry);
+        this.skipped = Counter.builder("stat.wal.skipped").register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(dir);
+        checkpoint = FileChannel.open(dir.resolve(CHECKPOINT), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        drainedLsn = readCheckpoint();
+        lastLsn = drainedLsn;
+        try (Stream<Path> paths = Files.list(dir)) {
+            paths.filter(path -> path.getFileName().toString().startsWith(FILE_PREFIX))
+                    .sorted()
+                    .forEach(path -> files.add(new WalFile(path, firstLsnOf(path))));
+        }
+        long replayed = replay();
+        durableLsn = lastLsn;
+        drainedLsn = lastLsn;
+        writeCheckpoint();
+        deleteDrainedFiles();
+        active = openFile(lastLsn + 1);
+        syncer = new Thread(this::syncLoop, "hit-wal-sync");
+        syncer.setDaemon(true);
+        syncer.start();
+        log.info("Журнал hit'ов {}: дописано в хранилище {} hit'ов, fsync раз в {} мс, ожидание fsync: {}",
+                dir, replayed, syncIntervalMs, waitForSync);
+    }
+
+    @PreDestroy
+    public void close() throws IOException, InterruptedException {
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        syncer.join();
+        active.close();
+        checkpoint.close();
+    }
+
+    /**
+     * Добавляет записи в очередь журнала. Порядок вызовов должен совпадать с порядком постановки hit'ов в буфер.
+     * Пакет добавляется целиком или, если какой-то hit не удалось закодировать, не добавляется вовсе.
+     *
+     * @return номер последней записи, который передаётся в {@link #awaitSync(long)}
+     */
+    public long append(List<Hit> hits) {
+        if (!enabled || hits.isEmpty()) {
+            return 0;
+        }
+        synchronized (lock) {
+            checkFailure();
+            ByteArrayOutputStream records = new ByteArrayOutputStream(hits.size() * 64);
+            DataOutputStream out = new DataOutputStream(records);
+            long lsn = lastLsn;
+            try {
+                for (Hit hit : hits) {
+                    byte[] record = encode(++lsn, hit);
+                    out.writeInt(record.length);
+                    out.writeInt(checksum(record));
+                    out.write(record);
+                }
+                records.writeTo(pending);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            lastLsn = lsn;
+            lock.notifyAll();
+            return lastLsn;
+        }
+    }
+
+    /**
+     * Ждёт fsync записи с номером lsn, если включено ожидание.
+     */
+    public void awaitSync(long lsn) {
+        if (!enabled || !waitForSync) {
+            return;
+        }
+        synchronized (lock) {
+            while (durableLsn < lsn) {
+                checkFailure();
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Прервано ожидание записи журнала hit'ов", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Отмечает, что следующие count hit'ов журнала записаны в хранилище.
+     */
+    public void drained(int count) {
+        if (!enabled || count == 0) {
+            return;
+        }
+        synchronized (lock) {
+            drainedLsn += count;
+        }
+        try {
+            writeCheckpoint();
+            deleteDrainedFiles();
+        } catch (IOException e) {
+            log.error("Не удалось обновить checkpoint журнала hit'ов", e);
+        }
+    }
+
+    private void syncLoop() {
+        while (true) {
+            byte[] data;
+            long upTo;
+            synchronized (lock) {
+                while (pending.size() == 0 && !closed) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                if (pending.size() == 0) {
+                    return;
+                }
+            }
+            if (syncIntervalMs > 0 && !closed) {
+                try {
+                    Thread.sleep(syncIntervalMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (lock) {
+                data = pending.toByteArray();
+                pending = new ByteArrayOutputStream(data.length);
+                upTo = lastLsn;
+            }
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(data);
+                while (buffer.hasRemaining()) {
+                    active.write(buffer);
+                }
+                active.force(false);
+                if (active.size() >= fileSize) {
+                    active.close();
+                    active = openFile(upTo + 1);
+                }
+            } catch (IOException e) {
+                log.error("Не удалось записать журнал hit'ов, приём hit'ов остановлен", e);
+                synchronized (lock) {
+                    failure = e;
+                    lock.notifyAll();
+                }
+                return;
+            }
+            synchronized (lock) {
+                syncs.increment();
+                syncedHits.increment(upTo - durableLsn);
+                durableLsn = upTo;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    private long replay() throws IOException {
+        long replayed = 0;
+        List<Hit> batch = new ArrayList<>(batchSize);
+        for (WalFile file : files) {
+            try (FileChannel channel = FileChannel.open(file.path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                ByteBuffer data = ByteBuffer.allocate((int) channel.size());
+                while (data.hasRemaining()) {
+                    if (channel.read(data) < 0) {
+                        break;
+                    }
+                }
+                data.flip();
+                while (data.remaining() >= RECORD_HEADER) {
+                    int start = data.position();
+                    int length = data.getInt();
+                    int crc = data.getInt();
+                    if (length <= 0 || length > MAX_RECORD || length > data.remaining()) {
+                        data.position(start);
+                        break;
+                    }
+                    byte[] record = new byte[length];
+                    data.get(record);
+                    if (checksum(record) != crc) {
+                        data.position(start);
+                        break;
+                    }
+                    DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+                    long lsn = in.readLong();
+                    lastLsn = Math.max(lastLsn, lsn);
+                    if (lsn > drainedLsn) {
+                        batch.add(decode(in));
+                        if (batch.size() >= batchSize) {
+                            replayed += apply(batch);
+                            batch.clear();
+                        }
+                    }
+                }
+                if (data.hasRemaining()) {
+                    log.warn("Отрезан недописанный хвост журнала {}: {} байт", file.path, data.remaining());
+                    channel.truncate(data.position());
+                    channel.force(true);
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            replayed += apply(batch);
+        }
+        return replayed;
+    }
+
+    /**
+     * Временная ошибка хранилища, из-за которой не записан ни один hit, останавливает запуск, чтобы hit'ы
+     * журнала не потерялись; записи, которые хранилище не принимает, пропускаются.
+     *
+     * @return количество записанных hit'ов
+     */
+    private int apply(List<Hit> batch) {
+        List<Hit> rejected = new ArrayList<>();
+        List<Hit> rest = batch;
+        while (!rest.isEmpty()) {
+            int written = HitBatchWriter.write(hitStorage, rest, (hit, e) -> {
+                rejected.add(hit);
+                skipped.increment();
+                log.error("Запись журнала пропущена, хранилище её не принимает: {}", hit, e);
+            });
+            rest = rest.subList(written, rest.size());
+        }
+        return batch.size() - rejected.size();
+    }
+
+    private FileChannel openFile(long firstLsn) throws IOException {
+        WalFile last = files.peekLast();
+        if (last != null && last.firstLsn == firstLsn) {
+            return FileChannel.open(last.path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        Path path = dir.resolve(String.format("%s%020d%s", FILE_PREFIX, firstLsn, FILE_SUFFIX));
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        synchronized (files) {
+            files.add(new WalFile(path, firstLsn));
+        }
+        return channel;
+    }
+
+    // файл можно удалить, когда в хранилище записан последний hit перед началом следующего файла
+    private void deleteDrainedFiles() throws IOException {
+        long drained;
+        synchronized (lock) {
+            drained = drainedLsn;
+        }
+        synchronized (files) {
+            while (files.size() > 1) {
+                WalFile first = files.pollFirst();
+                if (files.peekFirst().firstLsn - 1 > drained) {
+                    files.addFirst(first);
+                    return;
+                }
+                Files.deleteIfExists(first.path);
+            }
+        }
+    }
+
+    // слоты (версия, номер, CRC32C) пишутся по очереди: при обрыве записи одного слота остаётся другой
+    private long readCheckpoint() throws IOException {
+        ByteBuffer slots = ByteBuffer.allocate(2 * CHECKPOINT_SLOT);
+        checkpoint.read(slots, 0);
+        slots.flip();
+        long result = 0;
+        while (slots.remaining() >= CHECKPOINT_SLOT) {
+            long version = slots.getLong();
+            long lsn = slots.getLong();
+            int crc = slots.getInt();
+            if (version > checkpointVersion && crc == checkpointChecksum(version, lsn)) {
+                checkpointVersion = version;
+                result = lsn;
+            }
+        }
+        return result;
+    }
+
+    private synchronized void writeCheckpoint() throws IOException {
+        long lsn;
+        synchronized (lock) {
+            lsn = drainedLsn;
+        }
+        long version = ++checkpointVersion;
+        ByteBuffer slot = ByteBuffer.allocate(CHECKPOINT_SLOT)
+                .putLong(version)
+                .putLong(lsn)
+                .putInt(checkpointChecksum(version, lsn));
+        slot.flip();
+        checkpoint.write(slot, (version % 2) * CHECKPOINT_SLOT);
+        checkpoint.force(false);
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new UncheckedIOException("Журнал hit'ов недоступен", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Журнал hit'ов закрыт");
+        }
+    }
+
+    private static byte[] encode(long lsn, Hit hit) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(lsn);
+            out.writeUTF(hit.getApp());
+            out.writeUTF(hit.getUri());
+            out.write(IpMapper.toBytes(hit.getIp()));
+            out.writeLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(hit.getTimestamp().getNano());
+            out.writeLong(hit.getResponseTimeMs() == null ? -1 : hit.getResponseTimeMs());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Hit decode(DataInputStream in) throws IOException {
+        String app = in.readUTF();
+        String uri = in.readUTF();
+        byte[] ip = new byte[IpMapper.IP_BYTES];
+        in.readFully(ip);
+        LocalDateTime timestamp = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+        long responseTimeMs = in.readLong();
+        return Hit.builder()
+                .app(app)
+                .uri(uri)
+                .ip(IpMapper.fromBytes(ip))
+                .timestamp(timestamp)
+                .responseTimeMs(responseTimeMs < 0 ? null : responseTimeMs)
+                .build();
+    }
+
+    private static int checksum(byte[] record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record);
+        return (int) crc.getValue();
+    }
+
+    private static int checkpointChecksum(long version, long lsn) {
+        CRC32C crc = new CRC32C();
+        crc.update(ByteBuffer.allocate(2 * Long.BYTES).putLong(version).putLong(lsn).array());
+        return (int) crc.getValue();
+    }
+
+    private static long firstLsnOf(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - FILE_SUFFIX.length()));
+    }
+
+    @AllArgsConstructor
+    private static final class WalFile {
+        private final Path path;
+        private final long firstLsn;
+    }
+}
\ No newline at end of file
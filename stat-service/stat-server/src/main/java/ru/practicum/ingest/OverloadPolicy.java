@@ -0,0 +1,15 @@
+package ru.practicum.ingest;
+
+/**
+ * Что делать с hit'ом, если буфер записи заполнен.
+ */
+public enum OverloadPolicy {
+    /**
+     * Ответить 503 с заголовком Retry-After, клиент повторит запрос.
+     */
+    REJECT,
+    /**
+     * Принять запрос и отбросить hit, увеличив счётчик stat.ingest.dropped.
+     */
+    DROP
+}
\ No newline at end of file
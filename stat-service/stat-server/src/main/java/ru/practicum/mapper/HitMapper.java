@@ -1,22 +1,65 @@
 package ru.practicum.mapper;
 
 import ru.practicum.dto.HitDto;
+import ru.practicum.exceptions.ValidationRequestException;
 import ru.practicum.model.Hit;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 
 public class HitMapper {
+    // длина столбцов apps.name и uris.name
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
     private HitMapper() {
     }
 
     public static Hit toHit(HitDto hitDto) {
+        return toHit(hitDto.getApp(), hitDto.getUri(), hitDto.getIp(), parseTimestamp(hitDto.getTimestamp()),
+                hitDto.getResponseTimeMs());
+    }
+
+    /**
+     * Проверяет hit при приёме: в буфере он только ждёт записи, и ошибка записи уже не дойдёт до клиента.
+     */
+
+    public static Hit toHit(String app, String uri, String ip, LocalDateTime timestamp, Long responseTimeMs) {
+        checkName("app", app);
+        checkName("uri", uri);
+        if (timestamp == null) {
+            throw new ValidationRequestException("Поле 'timestamp' обязательно.");
+        }
+        if (responseTimeMs != null && responseTimeMs < 0) {
+            throw new ValidationRequestException("Время ответа не может быть отрицательным: " + responseTimeMs);
+        }
         return Hit.builder()
-                  .app(hitDto.getApp())
-                  .uri(hitDto.getUri())
-                  .ip(hitDto.getIp())
-                  .timestamp(LocalDateTime.parse(hitDto.getTimestamp(), DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")))
+                  .app(app)
+                  .uri(uri)
+                  .ip(IpMapper.normalize(ip))
+                  .timestamp(timestamp)
+                  .responseTimeMs(responseTimeMs)
                   .build();
     }
+
+    private static void checkName(String field, String value) {
+        if (value == null || value.isBlank()) {
+            throw new ValidationRequestException("Поле '" + field + "' не может быть пустым.");
+        }
+        if (value.length() > MAX_NAME_LENGTH) {
+            throw new ValidationRequestException("Поле '" + field + "' длиннее " + MAX_NAME_LENGTH + " символов.");
+        }
+    }
+
+    private static LocalDateTime parseTimestamp(String timestamp) {
+        if (timestamp == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(timestamp, FORMATTER);
+        } catch (DateTimeParseException e) {
+            throw new ValidationRequestException("Некорректное значение поля 'timestamp': " + timestamp);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,74 @@
+package ru.practicum.mapper;
+
+import ru.practicum.exceptions.ValidationRequestException;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+/**
+ * Разбор IP-адресов hit'ов без обращения к DNS: IPv4 хранится как IPv4-mapped IPv6, всего 16 байт.
+ */
+public class IpMapper {
+    public static final int IP_BYTES = 16;
+
+    private IpMapper() {
+    }
+
+    public static String normalize(String ip) {
+        return toInetAddress(ip).getHostAddress();
+    }
+
+    public static byte[] toBytes(String ip) {
+        byte[] address = toInetAddress(ip).getAddress();
+        if (address.length == IP_BYTES) {
+            return address;
+        }
+        byte[] mapped = new byte[IP_BYTES];
+        mapped[10] = (byte) 0xff;
+        mapped[11] = (byte) 0xff;
+        System.arraycopy(address, 0, mapped, 12, address.length);
+        return mapped;
+    }
+
+    public static String fromBytes(byte[] bytes) {
+        try {
+            return InetAddress.getByAddress(bytes).getHostAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Некорректная длина IP-адреса: " + bytes.length, e);
+        }
+    }
+
+    private static InetAddress toInetAddress(String ip) {
+        if (ip == null || ip.isEmpty()) {
+            throw new ValidationRequestException("IP-адрес не может быть пустым.");
+        }
+        try {
+            if (ip.indexOf(':') >= 0 && ip.indexOf('%') < 0) {
+                return InetAddress.getByName(ip);
+            }
+            return InetAddress.getByAddress(parseIpv4(ip));
+        } catch (UnknownHostException | IllegalArgumentException e) {
+            throw new ValidationRequestException("Некорректный IP-адрес: " + ip);
+        }
+    }
+
+    private static byte[] parseIpv4(String ip) {
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) {
+            throw new IllegalArgumentException(ip);
+        }
+        byte[] address = new byte[4];
+        for (int i = 0; i < parts.length; i++) {
+            String part = parts[i];
+            if (part.isEmpty() || part.length() > 3 || !part.chars().allMatch(Character::isDigit)) {
+                throw new IllegalArgumentException(ip);
+            }
+            int octet = Integer.parseInt(part);
+            if (octet > 255) {
+                throw new IllegalArgumentException(ip);
+            }
+            address[i] = (byte) octet;
+        }
+        return address;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,24 @@
+package ru.practicum.mapper;
+
+import ru.practicum.dto.LatencyDto;
+import ru.practicum.sketch.LatencyHistogram;
+
+public class LatencyMapper {
+
+    private LatencyMapper() {
+    }
+
+    public static LatencyDto toLatencyDto(String uri, LatencyHistogram histogram) {
+        if (histogram.getCount() == 0) {
+            return LatencyDto.builder().uri(uri).count(0).build();
+        }
+        return LatencyDto.builder()
+                         .uri(uri)
+                         .count(histogram.getCount())
+                         .p50(histogram.percentile(0.5))
+                         .p90(histogram.percentile(0.9))
+                         .p99(histogram.percentile(0.99))
+                         .max(histogram.getMax())
+                         .build();
+    }
+}
\ No newline at end of file
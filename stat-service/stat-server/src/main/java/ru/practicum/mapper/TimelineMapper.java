@@ -0,0 +1,22 @@
+package ru.practicum.mapper;
+
+import ru.practicum.dto.TimelineDto;
+import ru.practicum.model.TimelineStat;
+
+import java.time.format.DateTimeFormatter;
+
+public class TimelineMapper {
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private TimelineMapper() {
+    }
+
+    public static TimelineDto toTimelineDto(TimelineStat stat) {
+        return TimelineDto.builder()
+                          .app(stat.getApp())
+                          .uri(stat.getUri())
+                          .bucket(stat.getBucket().format(FORMATTER))
+                          .hits(stat.getHits().intValue())
+                          .build();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,18 @@
+package ru.practicum.model;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@Getter
+@NoArgsConstructor
+@Entity
+@Table(name = "apps")
+public class App {
+
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private String name;
+}
\ No newline at end of file
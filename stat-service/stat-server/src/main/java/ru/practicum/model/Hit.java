@@ -3,6 +3,8 @@ package ru.practicum.model;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.Hibernate;
+import ru.practicum.mapper.IpAttributeConverter;
+import ru.practicum.mapper.IpMapper;
 
 import java.time.LocalDateTime;
 import java.util.Objects;
@@ -21,18 +23,31 @@ public class Hit {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false)
+    @Column(name = "app_id", nullable = false)
+    private Integer appId;
+
+    @Column(name = "uri_id", nullable = false)
+    private Integer uriId;
+
+    @Transient
     private String app;
 
-    @Column(nullable = false)
+    @Transient
     private String uri;
 
-    @Column(nullable = false, length = 40)
+    @Convert(converter = IpAttributeConverter.class)
+    @Column(nullable = false, length = IpMapper.IP_BYTES)
     private String ip;
 
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
+    /**
+     * Хранится не в statistics, а в почасовых гистограммах statistics_latency.
+     */
+    @Transient
+    private Long responseTimeMs;
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,17 @@
+package ru.practicum.model;
+
+import ru.practicum.exceptions.ValidationRequestException;
+
+public enum StatGrouping {
+    URI,
+    PREFIX;
+
+    public static StatGrouping from(String value) {
+        for (StatGrouping grouping : values()) {
+            if (grouping.name().equalsIgnoreCase(value)) {
+                return grouping;
+            }
+        }
+        throw new ValidationRequestException("Неизвестное значение параметра 'group': " + value);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,17 @@
+package ru.practicum.model;
+
+import ru.practicum.exceptions.ValidationRequestException;
+
+public enum StatPrecision {
+    EXACT,
+    APPROX;
+
+    public static StatPrecision from(String value) {
+        for (StatPrecision precision : values()) {
+            if (precision.name().equalsIgnoreCase(value)) {
+                return precision;
+            }
+        }
+        throw new ValidationRequestException("Неизвестное значение параметра 'precision': " + value);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,65 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Статистика за часть диапазона в форме, которую можно объединить с соседними частями: счётчики hit'ов
+ * складываются, для уникальных посещений объединяются множества IP или скетчи HyperLogLog.
+ */
+public class StatSlice {
+    private final Map<StatKey, long[]> hits = new HashMap<>();
+    private final Map<StatKey, Set<IpKey>> visitors = new HashMap<>();
+    private final Map<StatKey, HyperLogLog> sketches = new HashMap<>();
+
+    public void addHits(StatKey key, long count) {
+        hits.computeIfAbsent(key, k -> new long[1])[0] += count;
+    }
+
+    public void addVisitor(StatKey key, long ipHigh, long ipLow) {
+        visitors.computeIfAbsent(key, k -> new HashSet<>()).add(new IpKey(ipHigh, ipLow));
+    }
+
+    public void addSketch(StatKey key, HyperLogLog sketch) {
+        sketches.merge(key, sketch, HyperLogLog::merge);
+    }
+
+    public StatSlice merge(StatSlice other) {
+        other.hits.forEach((key, count) -> addHits(key, count[0]));
+        other.visitors.forEach((key, set) -> visitors.merge(key, set, (a, b) -> {
+            if (a.size() < b.size()) {
+                b.addAll(a);
+                return b;
+            }
+            a.addAll(b);
+            return a;
+        }));
+        other.sketches.forEach(this::addSketch);
+        return this;
+    }
+
+    public List<Stat> toStats() {
+        List<Stat> result = new ArrayList<>();
+        hits.forEach((key, count) -> result.add(new Stat(key.getApp(), key.getUri(), count[0])));
+        visitors.forEach((key, set) -> result.add(new Stat(key.getApp(), key.getUri(), (long) set.size())));
+        sketches.forEach((key, sketch) -> result.add(new Stat(key.getApp(), key.getUri(), sketch.estimate())));
+        result.sort(Comparator.comparing(Stat::getHits).reversed());
+        return result;
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class IpKey {
+        private final long high;
+        private final long low;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,15 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+@Getter
+@AllArgsConstructor
+public class TimelineStat {
+    private LocalDateTime bucket;
+    private String app;
+    private String uri;
+    private Long hits;
+}
\ No newline at end of file
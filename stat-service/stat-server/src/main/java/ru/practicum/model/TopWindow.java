@@ -0,0 +1,39 @@
+package ru.practicum.model;
+
+import lombok.Getter;
+import ru.practicum.exceptions.ValidationRequestException;
+
+import java.time.Duration;
+
+/**
+ * Окна для топа URI: окно делится на слоты, и граница окна сдвигается с шагом в один слот.
+ */
+@Getter
+public enum TopWindow {
+    HOUR("1h", Duration.ofHours(1), 12),
+    DAY("24h", Duration.ofDays(1), 24),
+    WEEK("7d", Duration.ofDays(7), 28);
+
+    private final String value;
+    private final Duration length;
+    private final int slots;
+
+    TopWindow(String value, Duration length, int slots) {
+        this.value = value;
+        this.length = length;
+        this.slots = slots;
+    }
+
+    public long getSlotSeconds() {
+        return length.getSeconds() / slots;
+    }
+
+    public static TopWindow from(String value) {
+        for (TopWindow window : values()) {
+            if (window.value.equalsIgnoreCase(value)) {
+                return window;
+            }
+        }
+        throw new ValidationRequestException("Неизвестное значение параметра 'window': " + value);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package ru.practicum.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+public class Visitor {
+    private String app;
+    private String uri;
+    private String ip;
+}
\ No newline at end of file
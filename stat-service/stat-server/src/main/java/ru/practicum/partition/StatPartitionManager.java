@@ -0,0 +1,155 @@
+package ru.practicum.partition;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.cache.StatQueryCache;
+import ru.practicum.counter.HitCounters;
+import ru.practicum.ingest.HitBuffer;
+import ru.practicum.model.Stat;
+import ru.practicum.model.Visitor;
+import ru.practicum.repository.HitLatencyRepository;
+import ru.practicum.repository.HitSketchRepository;
+import ru.practicum.repository.StatPartitionRepository;
+import ru.practicum.repository.StatRollupRepository;
+import ru.practicum.snapshot.StatSnapshot;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Поддерживает помесячные партиции таблицы statistics: создаёт их заранее
+ * и, если задан срок хранения, удаляет устаревшие партиции целиком.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+public class StatPartitionManager {
+    private static final DateTimeFormatter MONTH_FORMATTER = DateTimeFormatter.ofPattern("yyyyMM");
+    private static final Pattern PARTITION_NAME = Pattern.compile("statistics_p(\\d{6})");
+
+    private final StatPartitionRepository statPartitionRepository;
+    private final StatRollupRepository statRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitLatencyRepository hitLatencyRepository;
+    private final HitBuffer hitBuffer;
+    private final HitCounters hitCounters;
+    private final StatQueryCache statQueryCache;
+    private final StatSnapshot statSnapshot;
+    private final HitArchive hitArchive;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+    private final int retentionMonths;
+
+    public StatPartitionManager(StatPartitionRepository statPartitionRepository,
+                                StatRollupRepository statRollupRepository,
+                                HitSketchRepository hitSketchRepository,
+                                HitLatencyRepository hitLatencyRepository,
+                                HitBuffer hitBuffer,
+                                HitCounters hitCounters,
+                                StatQueryCache statQueryCache,
+                                StatSnapshot statSnapshot,
+                                HitArchive hitArchive,
+                                TransactionTemplate transactionTemplate,
+                                @Value("${stat-server.partitions.months-ahead:3}") int monthsAhead,
+                                @Value("${stat-server.partitions.retention-months:0}") int retentionMonths) {
+        this.statPartitionRepository = statPartitionRepository;
+        this.statRollupRepository = statRollupRepository;
+        this.hitSketchRepository = hitSketchRepository;
+        this.hitLatencyRepository = hitLatencyRepository;
+        this.hitBuffer = hitBuffer;
+        this.hitCounters = hitCounters;
+        this.statQueryCache = statQueryCache;
+        this.statSnapshot = statSnapshot;
+        this.hitArchive = hitArchive;
+        this.transactionTemplate = transactionTemplate;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+    }
+
+    @PostConstruct
+    @Scheduled(cron = "${stat-server.partitions.cron:0 0 3 * * *}")
+    public void maintain() {
+        YearMonth current = YearMonth.now();
+        YearMonth first = retentionMonths > 0 ? current.minusMonths(retentionMonths) : current;
+        createPartitions(first, current.plusMonths(monthsAhead));
+        if (retentionMonths > 0) {
+            dropExpired(first.atDay(1).atStartOfDay());
+        }
+    }
+
+    private void createPartitions(YearMonth first, YearMonth last) {
+        List<String> existing = statPartitionRepository.findPartitions();
+        for (YearMonth month = first; !month.isAfter(last); month = month.plusMonths(1)) {
+            String name = partitionName(month);
+            if (existing.contains(name)) {
+                continue;
+            }
+            LocalDateTime from = month.atDay(1).atStartOfDay();
+            LocalDateTime to = month.plusMonths(1).atDay(1).atStartOfDay();
+            if (statPartitionRepository.defaultHasRows(from, to)) {
+                log.info("Создаём партицию {} с переносом строк из партиции по умолчанию", name);
+                statPartitionRepository.createPartitionFromDefault(name, from, to);
+            } else {
+                log.info("Создаём партицию {}", name);
+                statPartitionRepository.createPartition(name, from, to);
+            }
+        }
+    }
+
+    private void dropExpired(LocalDateTime boundary) {
+        YearMonth boundaryMonth = YearMonth.from(boundary);
+        List<String> expired = statPartitionRepository.findPartitions().stream()
+                .filter(name -> {
+                    Matcher matcher = PARTITION_NAME.matcher(name);
+                    return matcher.matches() && YearMonth.parse(matcher.group(1), MONTH_FORMATTER).isBefore(boundaryMonth);
+                })
+                .collect(Collectors.toList());
+        if (expired.isEmpty() && !statPartitionRepository.defaultHasRowsBefore(boundary)
+                && !hitArchive.hasFilesBefore(boundary.toLocalDate())) {
+            return;
+        }
+
+        // удалённые hit'ы не воспроизводятся дочитыванием после отметки снимка, поэтому снимок переписывается
+        statSnapshot.rewrite(() -> {
+            hitBuffer.flush();
+            // посещения, оставшиеся в архиве после boundary, запрос к БД не видит, поэтому при непустом архиве
+            // счётчики не уменьшаются, а строятся заново
+            boolean reload = !hitArchive.isEmpty();
+            List<Stat> removedHits = reload ? List.of() : statPartitionRepository.findStatsBefore(boundary);
+            List<Visitor> removedVisitors = reload ? List.of() : statPartitionRepository.findVisitorsOnlyBefore(boundary);
+            transactionTemplate.executeWithoutResult(status -> {
+                expired.forEach(statPartitionRepository::dropPartition);
+                statPartitionRepository.deleteDefaultBefore(boundary);
+                statRollupRepository.deleteBefore(boundary);
+                hitSketchRepository.deleteBefore(boundary.toLocalDate());
+                hitLatencyRepository.deleteBefore(boundary);
+            });
+            if (reload) {
+                hitArchive.deleteBefore(boundary.toLocalDate());
+                statSnapshot.paused(() -> {
+                    hitBuffer.flush();
+                    hitCounters.load();
+                });
+            } else {
+                hitCounters.evict(removedHits, removedVisitors, boundary);
+            }
+        });
+        statQueryCache.clear();
+        log.info("Удалены hit'ы старше {}: партиции {}", boundary, expired);
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "statistics_p" + month.format(MONTH_FORMATTER);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Чтение и удаление сырых hit'ов дня, который переносится в архив.
+ */
+@Repository
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class HitArchiveRepository {
+    private static final String SELECT_RANGE = "SELECT s.id, s.app_id, s.uri_id, a.name AS app, u.name AS uri, s.ip, " +
+            "s.timestamp FROM statistics s JOIN apps a ON a.id = s.app_id JOIN uris u ON u.id = s.uri_id " +
+            "WHERE s.timestamp >= ? AND s.timestamp < ? ORDER BY s.timestamp, s.id";
+    private static final int MAX_DELETE_IDS = 100_000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<Hit> findRange(LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(SELECT_RANGE, (rs, rowNum) -> Hit.builder()
+                        .id(rs.getLong("id"))
+                        .appId(rs.getInt("app_id"))
+                        .uriId(rs.getInt("uri_id"))
+                        .app(rs.getString("app"))
+                        .uri(rs.getString("uri"))
+                        .ip(IpMapper.fromBytes(rs.getBytes("ip")))
+                        .timestamp(rs.getTimestamp("timestamp").toLocalDateTime())
+                        .build(),
+                Timestamp.valueOf(from), Timestamp.valueOf(to));
+    }
+
+    /**
+     * Удаляет перенесённые в архив строки по id. Условие по времени отсекает лишние партиции.
+     */
+    public int deleteArchived(LocalDateTime from, LocalDateTime to, long[] ids) {
+        int deleted = 0;
+        for (int start = 0; start < ids.length; start += MAX_DELETE_IDS) {
+            Long[] chunk = Arrays.stream(ids, start, Math.min(start + MAX_DELETE_IDS, ids.length))
+                    .boxed()
+                    .toArray(Long[]::new);
+            deleted += jdbcTemplate.update("DELETE FROM statistics WHERE timestamp >= ? AND timestamp < ? " +
+                    "AND id = ANY(?)", Timestamp.valueOf(from), Timestamp.valueOf(to), chunk);
+        }
+        return deleted;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,107 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.PGCopyOutputStream;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Пакетная запись hit'ов в statistics бинарным COPY одним потоком. Id строк растут в порядке записи,
+ * поэтому hit'ы после известного id дочитываются по первичному ключу.
+ */
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+public class HitBatchRepository {
+    private static final String COPY_HITS = "COPY statistics (app_id, uri_id, ip, timestamp) FROM STDIN (FORMAT BINARY)";
+    private static final String SELECT_AFTER = "SELECT s.id, s.app_id, s.uri_id, a.name AS app, u.name AS uri, s.ip, " +
+            "s.timestamp FROM statistics s JOIN apps a ON a.id = s.app_id JOIN uris u ON u.id = s.uri_id " +
+            "WHERE s.id > ? ORDER BY s.id";
+    private static final byte[] COPY_SIGNATURE = {'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0};
+    private static final short COPY_FIELDS = 4;
+    // timestamp в бинарном формате PostgreSQL — микросекунды от 2000-01-01
+    private static final long PG_EPOCH_SECOND = LocalDateTime.of(2000, 1, 1, 0, 0).toEpochSecond(ZoneOffset.UTC);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Transactional
+    public void saveAll(List<Hit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        copy(hits);
+    }
+
+    public long findLastId() {
+        Long lastId = jdbcTemplate.queryForObject("SELECT MAX(id) FROM statistics", Long.class);
+        return lastId == null ? 0 : lastId;
+    }
+
+    public void forEachAfter(long lastId, Consumer<Hit> consumer) {
+        jdbcTemplate.query(SELECT_AFTER, rs -> {
+            consumer.accept(Hit.builder()
+                    .id(rs.getLong("id"))
+                    .appId(rs.getInt("app_id"))
+                    .uriId(rs.getInt("uri_id"))
+                    .app(rs.getString("app"))
+                    .uri(rs.getString("uri"))
+                    .ip(IpMapper.fromBytes(rs.getBytes("ip")))
+                    .timestamp(rs.getTimestamp("timestamp").toLocalDateTime())
+                    .build());
+        }, lastId);
+    }
+
+    private void copy(List<Hit> hits) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            PGConnection pgConnection = connection.unwrap(PGConnection.class);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new PGCopyOutputStream(pgConnection, COPY_HITS), 1 << 16))) {
+                out.write(COPY_SIGNATURE);
+                out.writeInt(0);
+                out.writeInt(0);
+                for (Hit hit : hits) {
+                    out.writeShort(COPY_FIELDS);
+                    out.writeInt(Integer.BYTES);
+                    out.writeInt(hit.getAppId());
+                    out.writeInt(Integer.BYTES);
+                    out.writeInt(hit.getUriId());
+                    out.writeInt(IpMapper.IP_BYTES);
+                    out.write(IpMapper.toBytes(hit.getIp()));
+                    out.writeInt(Long.BYTES);
+                    out.writeLong(toPgMicros(hit.getTimestamp()));
+                }
+                out.writeShort(-1);
+            } catch (IOException e) {
+                // ошибку PostgreSQL переводит в DataAccessException JdbcTemplate, как и для обычных запросов,
+                // чтобы буфер отличал отклонённые данные от недоступной БД
+                for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+                    if (cause instanceof SQLException sqlException) {
+                        throw sqlException;
+                    }
+                }
+                throw new UncheckedIOException("Не удалось передать hit'ы через COPY", e);
+            }
+            return null;
+        });
+    }
+
+    private static long toPgMicros(LocalDateTime time) {
+        return (time.toEpochSecond(ZoneOffset.UTC) - PG_EPOCH_SECOND) * 1_000_000L + time.getNano() / 1_000;
+    }
+}
\ No newline at end of file
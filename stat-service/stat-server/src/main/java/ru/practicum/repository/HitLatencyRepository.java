@@ -0,0 +1,100 @@
+package ru.practicum.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.Hit;
+import ru.practicum.rollup.Rollup;
+import ru.practicum.sketch.LatencyHistogram;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Почасовые гистограммы времени ответа по uri: одна строка на (час, uri) вместо значения в каждом hit'е.
+ */
+@Repository
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class HitLatencyRepository {
+    private static final String SELECT_FOR_UPDATE = "SELECT bucket, uri_id, histogram FROM statistics_latency " +
+            "WHERE bucket IN (:buckets) AND uri_id IN (:uriIds) FOR UPDATE";
+    private static final String UPSERT = "INSERT INTO statistics_latency (bucket, uri_id, histogram) " +
+            "VALUES (:bucket, :uriId, :histogram) ON CONFLICT (bucket, uri_id) DO UPDATE SET histogram = EXCLUDED.histogram";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void merge(List<Hit> hits) {
+        Map<HourKey, LatencyHistogram> histograms = new HashMap<>();
+        Set<LocalDateTime> buckets = new HashSet<>();
+        Set<Integer> uriIds = new HashSet<>();
+        for (Hit hit : hits) {
+            if (hit.getResponseTimeMs() == null) {
+                continue;
+            }
+            LocalDateTime bucket = Rollup.HOUR.floor(hit.getTimestamp());
+            buckets.add(bucket);
+            uriIds.add(hit.getUriId());
+            histograms.computeIfAbsent(new HourKey(bucket, hit.getUriId()), k -> new LatencyHistogram())
+                    .record(hit.getResponseTimeMs());
+        }
+        if (histograms.isEmpty()) {
+            return;
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("buckets", buckets.stream().map(Timestamp::valueOf).collect(Collectors.toList()))
+                .addValue("uriIds", uriIds);
+        jdbcTemplate.query(SELECT_FOR_UPDATE, params, rs -> {
+            HourKey key = new HourKey(rs.getTimestamp("bucket").toLocalDateTime(), rs.getInt("uri_id"));
+            LatencyHistogram histogram = histograms.get(key);
+            if (histogram != null) {
+                histogram.merge(LatencyHistogram.fromBytes(rs.getBytes("histogram")));
+            }
+        });
+        MapSqlParameterSource[] batch = histograms.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("bucket", Timestamp.valueOf(e.getKey().bucket))
+                        .addValue("uriId", e.getKey().uriId)
+                        .addValue("histogram", e.getValue().toBytes()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(UPSERT, batch);
+    }
+
+    public LatencyHistogram find(LocalDateTime from, LocalDateTime to, List<Integer> uriIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String sql = "SELECT histogram FROM statistics_latency WHERE bucket >= :from AND bucket <= :to";
+        if (uriIds != null) {
+            sql += " AND uri_id = ANY(:uriIds)";
+            params.addValue("uriIds", uriIds.toArray(Integer[]::new));
+        }
+        LatencyHistogram result = new LatencyHistogram();
+        jdbcTemplate.query(sql, params, rs -> {
+            result.merge(LatencyHistogram.fromBytes(rs.getBytes("histogram")));
+        });
+        return result;
+    }
+
+    public void deleteBefore(LocalDateTime boundary) {
+        jdbcTemplate.update("DELETE FROM statistics_latency WHERE bucket < :boundary",
+                new MapSqlParameterSource("boundary", Timestamp.valueOf(boundary)));
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class HourKey {
+        private final LocalDateTime bucket;
+        private final int uriId;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,141 @@
+package ru.practicum.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.model.StatKey;
+import ru.practicum.model.StatSlice;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.nio.ByteBuffer;
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Repository
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class HitSketchRepository {
+    private static final String SELECT_FOR_UPDATE = "SELECT day, app_id, uri_id, sketch FROM statistics_hll " +
+            "WHERE day IN (:days) AND uri_id IN (:uriIds) FOR UPDATE";
+    private static final String UPSERT = "INSERT INTO statistics_hll (day, app_id, uri_id, sketch) " +
+            "VALUES (:day, :appId, :uriId, :sketch) ON CONFLICT (day, app_id, uri_id) DO UPDATE SET sketch = EXCLUDED.sketch";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void merge(List<Hit> hits) {
+        Map<DayKey, HyperLogLog> sketches = new HashMap<>();
+        Set<LocalDate> days = new HashSet<>();
+        Set<Integer> uriIds = new HashSet<>();
+        for (Hit hit : hits) {
+            LocalDate day = hit.getTimestamp().toLocalDate();
+            days.add(day);
+            uriIds.add(hit.getUriId());
+            sketches.computeIfAbsent(new DayKey(day, hit.getAppId(), hit.getUriId()), k -> new HyperLogLog())
+                    .add(hit.getIp());
+        }
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("days", days.stream().map(Date::valueOf).collect(Collectors.toList()))
+                .addValue("uriIds", uriIds);
+        jdbcTemplate.query(SELECT_FOR_UPDATE, params, rs -> {
+            DayKey key = new DayKey(rs.getDate("day").toLocalDate(), rs.getInt("app_id"), rs.getInt("uri_id"));
+            HyperLogLog sketch = sketches.get(key);
+            if (sketch != null) {
+                sketch.merge(HyperLogLog.fromBytes(rs.getBytes("sketch")));
+            }
+        });
+        MapSqlParameterSource[] batch = sketches.entrySet().stream()
+                .map(e -> new MapSqlParameterSource()
+                        .addValue("day", Date.valueOf(e.getKey().day))
+                        .addValue("appId", e.getKey().appId)
+                        .addValue("uriId", e.getKey().uriId)
+                        .addValue("sketch", e.getValue().toBytes()))
+                .toArray(MapSqlParameterSource[]::new);
+        jdbcTemplate.batchUpdate(UPSERT, batch);
+    }
+
+    public void mergeDaySketches(LocalDate from, LocalDate to, List<Integer> uriIds, Map<StatKey, HyperLogLog> target) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Date.valueOf(from))
+                .addValue("to", Date.valueOf(to));
+        String sql = "SELECT a.name AS app, u.name AS uri, h.sketch FROM statistics_hll h " +
+                "JOIN apps a ON a.id = h.app_id JOIN uris u ON u.id = h.uri_id WHERE h.day >= :from AND h.day < :to";
+        if (uriIds != null) {
+            sql += " AND h.uri_id = ANY(:uriIds)";
+            params.addValue("uriIds", uriIds.toArray(Integer[]::new));
+        }
+        jdbcTemplate.query(sql, params, rs -> {
+            HyperLogLog sketch = HyperLogLog.fromBytes(rs.getBytes("sketch"));
+            target.merge(new StatKey(rs.getString("app"), rs.getString("uri")), sketch, HyperLogLog::merge);
+        });
+    }
+
+    public void mergeRawVisitors(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<Integer> uriIds,
+                                 Map<StatKey, HyperLogLog> target) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String where = "timestamp >= :from AND timestamp " + (toInclusive ? "<= :to" : "< :to");
+        if (uriIds != null) {
+            where += " AND uri_id = ANY(:uriIds)";
+            params.addValue("uriIds", uriIds.toArray(Integer[]::new));
+        }
+        String sql = "SELECT a.name AS app, u.name AS uri, s.ip FROM (SELECT DISTINCT app_id, uri_id, ip FROM statistics " +
+                "WHERE " + where + ") s JOIN apps a ON a.id = s.app_id JOIN uris u ON u.id = s.uri_id";
+        jdbcTemplate.query(sql, params, rs -> {
+            target.computeIfAbsent(new StatKey(rs.getString("app"), rs.getString("uri")), k -> new HyperLogLog())
+                    .add(IpMapper.fromBytes(rs.getBytes("ip")));
+        });
+    }
+
+    /**
+     * Точные множества посетителей (app, uri) за диапазон, границы включаются.
+     */
+    public void collectVisitors(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<Integer> uriIds,
+                                StatSlice target) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String where = "timestamp >= :from AND timestamp " + (toInclusive ? "<=" : "<") + " :to";
+        if (uriIds != null) {
+            where += " AND uri_id = ANY(:uriIds)";
+            params.addValue("uriIds", uriIds.toArray(Integer[]::new));
+        }
+        String sql = "SELECT a.name AS app, u.name AS uri, s.ip FROM (SELECT DISTINCT app_id, uri_id, ip FROM statistics " +
+                "WHERE " + where + ") s JOIN apps a ON a.id = s.app_id JOIN uris u ON u.id = s.uri_id";
+        Map<String, StatKey> keys = new HashMap<>();
+        jdbcTemplate.query(sql, params, rs -> {
+            String app = rs.getString("app");
+            String uri = rs.getString("uri");
+            StatKey key = keys.computeIfAbsent(app + '\n' + uri, k -> new StatKey(app, uri));
+            ByteBuffer ip = ByteBuffer.wrap(rs.getBytes("ip"));
+            target.addVisitor(key, ip.getLong(), ip.getLong());
+        });
+    }
+
+    public void deleteBefore(LocalDate boundary) {
+        jdbcTemplate.update("DELETE FROM statistics_hll WHERE day < :boundary",
+                new MapSqlParameterSource("boundary", Date.valueOf(boundary)));
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class DayKey {
+        private final LocalDate day;
+        private final int appId;
+        private final int uriId;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,79 @@
+package ru.practicum.repository;
+
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.StatSlice;
+import ru.practicum.model.TimelineStat;
+import ru.practicum.model.Visitor;
+import ru.practicum.rollup.Rollup;
+import ru.practicum.sketch.LatencyHistogram;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Хранилище hit'ов. Реализация выбирается свойством stat-server.storage: jdbc (по умолчанию) или segment.
+ */
+public interface HitStorage {
+    void saveAll(List<Hit> hits);
+
+    List<Stat> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                         StatPrecision precision);
+
+    /**
+     * Статистика за диапазон [start, end] (или [start, end), если endInclusive = false) в объединяемой форме:
+     * так широкий диапазон считается параллельно по частям.
+     */
+    StatSlice findSlice(LocalDateTime start, LocalDateTime end, boolean endInclusive, List<String> uris,
+                        boolean unique, StatPrecision precision);
+
+    /**
+     * Хеш IP, которым хранилище заполняет скетчи HyperLogLog: с ним к скетчам из findSlice добавляются IP hit'ов,
+     * ещё не записанных в хранилище.
+     */
+    long hashIp(String ip);
+
+    /**
+     * Выдаёт строки статистики в порядке убывания hits, не накапливая их в памяти там, где это позволяет хранилище.
+     */
+    default void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             StatPrecision precision, Consumer<Stat> consumer) {
+        findStats(start, end, uris, unique, precision).forEach(consumer);
+    }
+
+    /**
+     * Hit'ы (или уникальные посещения) по интервалам времени размера bucket, по возрастанию интервала.
+     */
+    List<TimelineStat> findTimeline(LocalDateTime start, LocalDateTime end, List<String> uris, Rollup bucket,
+                                    boolean unique);
+
+    /**
+     * Объединённая гистограмма времени ответа по URI за все часы, пересекающиеся с диапазоном.
+     */
+    LatencyHistogram findLatency(LocalDateTime start, LocalDateTime end, List<String> uris);
+
+    List<Stat> findTotalStats();
+
+    /**
+     * Все URI, по которым когда-либо сохранялись hit'ы.
+     */
+    List<String> findUris();
+
+    void forEachVisitor(Consumer<Visitor> consumer);
+
+    LocalDateTime findFirstTimestamp();
+
+    LocalDateTime findLastTimestamp();
+
+    /**
+     * Отметка последнего сохранённого hit'а: hit'ы, сохранённые позже, получают отметку больше.
+     */
+    long findLastHitId();
+
+    /**
+     * Hit'ы с отметкой больше lastHitId в порядке сохранения, с заполненными app и uri.
+     */
+    void forEachHitAfter(long lastHitId, Consumer<Hit> consumer);
+}
\ No newline at end of file
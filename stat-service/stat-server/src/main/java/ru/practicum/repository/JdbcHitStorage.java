@@ -0,0 +1,373 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.archive.HitArchive;
+import ru.practicum.dictionary.StatDictionary;
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+import ru.practicum.model.StatKey;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.StatSlice;
+import ru.practicum.model.TimelineStat;
+import ru.practicum.model.Visitor;
+import ru.practicum.rollup.Rollup;
+import ru.practicum.rollup.RollupPlanner;
+import ru.practicum.rollup.RollupSegment;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.LatencyHistogram;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище hit'ов в PostgreSQL. Hit'ы старых дней могут быть перенесены в {@link HitArchive}:
+ * запросы, которым нужны сырые hit'ы (точные уникальные посещения, неполные минуты на краях диапазона,
+ * полная загрузка счётчиков), объединяют строки БД с архивом.
+ */
+@Slf4j
+@Repository
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcHitStorage implements HitStorage {
+    private static final int MAX_IN_IDS = 10_000;
+
+    private final StatRepository statRepository;
+    private final HitBatchRepository hitBatchRepository;
+    private final StatRollupRepository statRollupRepository;
+    private final HitSketchRepository hitSketchRepository;
+    private final HitLatencyRepository hitLatencyRepository;
+    private final StatDictionary statDictionary;
+    private final StatTimelineRepository statTimelineRepository;
+    private final HitArchive hitArchive;
+
+    @Override
+    @Transactional
+    public void saveAll(List<Hit> hits) {
+        statDictionary.resolve(hits);
+        hitBatchRepository.saveAll(hits);
+        statRollupRepository.increment(hits);
+        hitSketchRepository.merge(hits);
+        hitLatencyRepository.merge(hits);
+    }
+
+    @Override
+    public List<Stat> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                StatPrecision precision) {
+        return hitArchive.reading(() -> findStatsWithArchive(start, end, uris, unique, precision));
+    }
+
+    private List<Stat> findStatsWithArchive(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                            StatPrecision precision) {
+        List<Integer> uriIds = uris == null ? null : statDictionary.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            log.debug("Ни один из URIs {} ещё не встречался в hit'ах", uris);
+            return List.of();
+        }
+        if (!unique) {
+            List<RollupSegment> plan = RollupPlanner.plan(start, end);
+            log.debug("Запрос статистики по rollup-таблицам для URIs: {}, план: {}", uris, plan);
+            return addArchivedHits(plan, uris, statRollupRepository.findStats(plan, uriIds));
+        } else if (precision == StatPrecision.APPROX) {
+            log.debug("Приближённый подсчёт уникальных посещений по HyperLogLog для URIs: {}", uris);
+            return findApproxUniqueStats(start, end, uris, uriIds);
+        } else if (hitArchive.overlaps(start, end, true)) {
+            log.debug("Запрос уникальной статистики по БД и архиву для URIs: {}", uris);
+            StatSlice slice = new StatSlice();
+            hitSketchRepository.collectVisitors(start, end, true, uriIds, slice);
+            hitArchive.collectVisitors(start, end, true, uris, slice);
+            return slice.toStats();
+        } else if (uriIds == null) {
+            log.debug("Запрос уникальной статистики без указания URIs");
+            return statRepository.findAllStatsUnique(start, end);
+        } else {
+            log.debug("Запрос уникальной статистики для URIs: {}", uris);
+            return findUniqueStatsByUris(uriIds, start, end);
+        }
+    }
+
+    @Override
+    public StatSlice findSlice(LocalDateTime start, LocalDateTime end, boolean endInclusive, List<String> uris,
+                               boolean unique, StatPrecision precision) {
+        return hitArchive.reading(() -> findSliceWithArchive(start, end, endInclusive, uris, unique, precision));
+    }
+
+    private StatSlice findSliceWithArchive(LocalDateTime start, LocalDateTime end, boolean endInclusive,
+                                           List<String> uris, boolean unique, StatPrecision precision) {
+        StatSlice slice = new StatSlice();
+        List<Integer> uriIds = uris == null ? null : statDictionary.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return slice;
+        }
+        if (!unique) {
+            List<RollupSegment> plan = RollupPlanner.plan(start, end, endInclusive);
+            statRollupRepository.findStats(plan, uriIds)
+                    .forEach(stat -> slice.addHits(new StatKey(stat.getApp(), stat.getUri()), stat.getHits()));
+            archivedRawSegments(plan).forEach(segment -> hitArchive.collectHits(segment.getFrom(), segment.getTo(),
+                    segment.isToInclusive(), uris, slice));
+        } else if (precision == StatPrecision.APPROX) {
+            findApproxSketches(start, end, endInclusive, uris, uriIds).forEach(slice::addSketch);
+        } else {
+            hitSketchRepository.collectVisitors(start, end, endInclusive, uriIds, slice);
+            if (hitArchive.overlaps(start, end, endInclusive)) {
+                hitArchive.collectVisitors(start, end, endInclusive, uris, slice);
+            }
+        }
+        return slice;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            StatPrecision precision, Consumer<Stat> consumer) {
+        hitArchive.reading(() -> streamStatsWithArchive(start, end, uris, unique, precision, consumer));
+    }
+
+    private void streamStatsWithArchive(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                        StatPrecision precision, Consumer<Stat> consumer) {
+        List<Integer> uriIds = uris == null ? null : statDictionary.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return;
+        }
+        List<RollupSegment> plan = RollupPlanner.plan(start, end);
+        if (!unique && archivedRawSegments(plan).isEmpty()) {
+            statRollupRepository.streamStats(plan, uriIds, consumer);
+        } else if (!unique) {
+            addArchivedHits(plan, uris, statRollupRepository.findStats(plan, uriIds)).forEach(consumer);
+        } else if (precision == StatPrecision.APPROX) {
+            findApproxUniqueStats(start, end, uris, uriIds).forEach(consumer);
+        } else if (hitArchive.overlaps(start, end, true)) {
+            findSliceWithArchive(start, end, true, uris, true, precision).toStats().forEach(consumer);
+        } else if (uriIds != null && uriIds.size() > MAX_IN_IDS) {
+            findUniqueStatsByUris(uriIds, start, end).forEach(consumer);
+        } else {
+            try (Stream<Stat> stats = uriIds == null
+                    ? statRepository.streamAllStatsUnique(start, end)
+                    : statRepository.streamStatsByUrisUnique(uriIds, start, end)) {
+                stats.forEach(consumer);
+            }
+        }
+    }
+
+    @Override
+    public List<TimelineStat> findTimeline(LocalDateTime start, LocalDateTime end, List<String> uris, Rollup bucket,
+                                           boolean unique) {
+        List<Integer> uriIds = uris == null ? null : statDictionary.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        log.debug("Запрос временного ряда с шагом {} для URIs: {}, unique={}", bucket.getValue(), uris, unique);
+        return hitArchive.reading(() -> unique
+                ? findUniqueTimeline(start, end, uris, uriIds, bucket)
+                : findTimeline(start, end, uris, uriIds, bucket));
+    }
+
+    @Override
+    public LatencyHistogram findLatency(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        List<Integer> uriIds = uris == null ? null : statDictionary.findUriIds(uris);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return new LatencyHistogram();
+        }
+        return hitLatencyRepository.find(Rollup.HOUR.floor(start), Rollup.HOUR.floor(end), uriIds);
+    }
+
+    @Override
+    public List<Stat> findTotalStats() {
+        return hitArchive.reading(() -> {
+            List<Stat> stats = statRepository.findTotalStats();
+            if (hitArchive.isEmpty()) {
+                return stats;
+            }
+            StatSlice slice = new StatSlice();
+            stats.forEach(stat -> slice.addHits(new StatKey(stat.getApp(), stat.getUri()), stat.getHits()));
+            hitArchive.collectTotals(slice);
+            return slice.toStats();
+        });
+    }
+
+    @Override
+    public long hashIp(String ip) {
+        return HyperLogLog.hash(ip);
+    }
+
+    @Override
+    public List<String> findUris() {
+        return statDictionary.findAllUris();
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachVisitor(Consumer<Visitor> consumer) {
+        hitArchive.reading(() -> {
+            try (Stream<Visitor> visitors = statRepository.streamVisitors()) {
+                visitors.forEach(consumer);
+            }
+            hitArchive.forEachVisitor(consumer);
+        });
+    }
+
+    @Override
+    public LocalDateTime findFirstTimestamp() {
+        return hitArchive.reading(() -> earliest(statRepository.findFirstTimestamp(), hitArchive.findFirstTimestamp()));
+    }
+
+    @Override
+    public LocalDateTime findLastTimestamp() {
+        return hitArchive.reading(() -> latest(statRepository.findLastTimestamp(), hitArchive.findLastTimestamp()));
+    }
+
+    // архивные hit'ы удалены из statistics, но их id не используются повторно
+    @Override
+    public long findLastHitId() {
+        return Math.max(hitBatchRepository.findLastId(), hitArchive.findLastHitId());
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void forEachHitAfter(long lastHitId, Consumer<Hit> consumer) {
+        hitBatchRepository.forEachAfter(lastHitId, consumer);
+    }
+
+    /**
+     * JPQL разворачивает IN в отдельные параметры, а PostgreSQL принимает не больше 32767 параметров,
+     * поэтому длинный список URI (например, раскрытый шаблон /events/*) запрашивается частями.
+     * URI в частях не пересекаются, так что строки частей можно просто объединить.
+     */
+    private List<Stat> findUniqueStatsByUris(List<Integer> uriIds, LocalDateTime start, LocalDateTime end) {
+        if (uriIds.size() <= MAX_IN_IDS) {
+            return statRepository.findStatsByUrisUnique(uriIds, start, end);
+        }
+        List<Stat> stats = new ArrayList<>();
+        for (int from = 0; from < uriIds.size(); from += MAX_IN_IDS) {
+            List<Integer> chunk = uriIds.subList(from, Math.min(from + MAX_IN_IDS, uriIds.size()));
+            stats.addAll(statRepository.findStatsByUrisUnique(chunk, start, end));
+        }
+        stats.sort(Comparator.comparing(Stat::getHits).reversed());
+        return stats;
+    }
+
+    /**
+     * Сырые края плана считаются по statistics, поэтому hit'ы краёв, перенесённые в архив, досчитываются из него.
+     */
+    private List<Stat> addArchivedHits(List<RollupSegment> plan, List<String> uris, List<Stat> stats) {
+        List<RollupSegment> archived = archivedRawSegments(plan);
+        if (archived.isEmpty()) {
+            return stats;
+        }
+        StatSlice slice = new StatSlice();
+        stats.forEach(stat -> slice.addHits(new StatKey(stat.getApp(), stat.getUri()), stat.getHits()));
+        archived.forEach(segment -> hitArchive.collectHits(segment.getFrom(), segment.getTo(), segment.isToInclusive(),
+                uris, slice));
+        return slice.toStats();
+    }
+
+    private List<RollupSegment> archivedRawSegments(List<RollupSegment> plan) {
+        return plan.stream()
+                .filter(segment -> segment.isRaw()
+                        && hitArchive.overlaps(segment.getFrom(), segment.getTo(), segment.isToInclusive()))
+                .collect(Collectors.toList());
+    }
+
+    private List<TimelineStat> findTimeline(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                            List<Integer> uriIds, Rollup bucket) {
+        List<TimelineStat> stats = statTimelineRepository.findHits(bucket, start, end, uriIds);
+        LocalDateTime from = bucket.ceil(start);
+        LocalDateTime to = bucket.floor(end);
+        List<RollupSegment> edges = from.isBefore(to)
+                ? List.of(new RollupSegment(null, start, from, false), new RollupSegment(null, to, end, true))
+                : List.of(new RollupSegment(null, start, end, true));
+        List<RollupSegment> archived = archivedRawSegments(edges);
+        if (archived.isEmpty()) {
+            return stats;
+        }
+        Map<LocalDateTime, StatSlice> buckets = new TreeMap<>();
+        stats.forEach(stat -> buckets.computeIfAbsent(stat.getBucket(), k -> new StatSlice())
+                .addHits(new StatKey(stat.getApp(), stat.getUri()), stat.getHits()));
+        archived.forEach(segment -> hitArchive.collectTimeline(bucket, segment.getFrom(), segment.getTo(),
+                segment.isToInclusive(), uris, false, buckets));
+        return toTimeline(buckets);
+    }
+
+    /**
+     * Архив покрывает дни целиком, поэтому интервалы до его границы считаются по множествам IP из архива
+     * и поздних hit'ов в БД, а интервалы после границы — одним запросом к БД.
+     */
+    private List<TimelineStat> findUniqueTimeline(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                                  List<Integer> uriIds, Rollup bucket) {
+        if (!hitArchive.overlaps(start, end, true)) {
+            return statTimelineRepository.findUniqueHits(bucket, start, end, uriIds);
+        }
+        LocalDateTime until = hitArchive.archivedUntil();
+        boolean archivedToEnd = until.isAfter(end);
+        LocalDateTime archivedEnd = archivedToEnd ? end : until;
+        Map<LocalDateTime, StatSlice> buckets = new TreeMap<>();
+        hitArchive.collectTimeline(bucket, start, archivedEnd, archivedToEnd, uris, true, buckets);
+        statTimelineRepository.collectVisitors(bucket, start, archivedEnd, archivedToEnd, uriIds, buckets);
+        List<TimelineStat> stats = toTimeline(buckets);
+        if (!archivedToEnd) {
+            stats.addAll(statTimelineRepository.findUniqueHits(bucket, until, end, uriIds));
+        }
+        return stats;
+    }
+
+    private static List<TimelineStat> toTimeline(Map<LocalDateTime, StatSlice> buckets) {
+        List<TimelineStat> stats = new ArrayList<>();
+        buckets.forEach((bucket, slice) -> slice.toStats().forEach(stat ->
+                stats.add(new TimelineStat(bucket, stat.getApp(), stat.getUri(), stat.getHits()))));
+        return stats;
+    }
+
+    private static LocalDateTime earliest(LocalDateTime a, LocalDateTime b) {
+        return a == null || (b != null && b.isBefore(a)) ? b : a;
+    }
+
+    private static LocalDateTime latest(LocalDateTime a, LocalDateTime b) {
+        return a == null || (b != null && b.isAfter(a)) ? b : a;
+    }
+
+    private List<Stat> findApproxUniqueStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                             List<Integer> uriIds) {
+        return findApproxSketches(start, end, true, uris, uriIds).entrySet().stream()
+                .map(e -> new Stat(e.getKey().getApp(), e.getKey().getUri(), e.getValue().estimate()))
+                .sorted(Comparator.comparing(Stat::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Скетчи дней хранятся и для дней, перенесённых в архив, а неполные дни на краях диапазона считаются
+     * по сырым hit'ам из БД и архива.
+     */
+    private Map<StatKey, HyperLogLog> findApproxSketches(LocalDateTime start, LocalDateTime end, boolean endInclusive,
+                                                         List<String> uris, List<Integer> uriIds) {
+        Map<StatKey, HyperLogLog> sketches = new HashMap<>();
+        LocalDateTime firstDay = Rollup.DAY.ceil(start);
+        LocalDateTime lastDay = Rollup.DAY.floor(end);
+        if (firstDay.isBefore(lastDay)) {
+            hitSketchRepository.mergeDaySketches(firstDay.toLocalDate(), lastDay.toLocalDate(), uriIds, sketches);
+            mergeRawSketches(start, firstDay, false, uris, uriIds, sketches);
+            mergeRawSketches(lastDay, end, endInclusive, uris, uriIds, sketches);
+        } else {
+            mergeRawSketches(start, end, endInclusive, uris, uriIds, sketches);
+        }
+        return sketches;
+    }
+
+    private void mergeRawSketches(LocalDateTime from, LocalDateTime to, boolean toInclusive, List<String> uris,
+                                  List<Integer> uriIds, Map<StatKey, HyperLogLog> sketches) {
+        hitSketchRepository.mergeRawVisitors(from, to, toInclusive, uriIds, sketches);
+        if (hitArchive.overlaps(from, to, toInclusive)) {
+            hitArchive.collectSketches(from, to, toInclusive, uris, sketches);
+        }
+    }
+}
\ No newline at end of file
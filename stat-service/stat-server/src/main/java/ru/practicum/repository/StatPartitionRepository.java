@@ -0,0 +1,88 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Stat;
+import ru.practicum.model.Visitor;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+@Repository
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class StatPartitionRepository {
+    private static final DateTimeFormatter BOUND_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<String> findPartitions() {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'statistics'::regclass", String.class);
+    }
+
+    public boolean defaultHasRows(LocalDateTime from, LocalDateTime to) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM statistics_default " +
+                "WHERE timestamp >= ? AND timestamp < ?)", Boolean.class, Timestamp.valueOf(from), Timestamp.valueOf(to)));
+    }
+
+    public boolean defaultHasRowsBefore(LocalDateTime boundary) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM statistics_default " +
+                "WHERE timestamp < ?)", Boolean.class, Timestamp.valueOf(boundary)));
+    }
+
+    public void createPartition(String name, LocalDateTime from, LocalDateTime to) {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF statistics " + bounds(from, to));
+    }
+
+    /**
+     * Создаёт партицию для диапазона, строки которого уже попали в партицию по умолчанию,
+     * переносит их и только затем подключает партицию к statistics.
+     */
+    @Transactional
+    public void createPartitionFromDefault(String name, LocalDateTime from, LocalDateTime to) {
+        Timestamp fromTs = Timestamp.valueOf(from);
+        Timestamp toTs = Timestamp.valueOf(to);
+        jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE statistics INCLUDING DEFAULTS INCLUDING CONSTRAINTS)");
+        jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM statistics_default " +
+                "WHERE timestamp >= ? AND timestamp < ?", fromTs, toTs);
+        jdbcTemplate.update("DELETE FROM statistics_default WHERE timestamp >= ? AND timestamp < ?", fromTs, toTs);
+        jdbcTemplate.execute("ALTER TABLE statistics ATTACH PARTITION " + name + " " + bounds(from, to));
+    }
+
+    public void dropPartition(String name) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + name);
+    }
+
+    public int deleteDefaultBefore(LocalDateTime boundary) {
+        return jdbcTemplate.update("DELETE FROM statistics_default WHERE timestamp < ?", Timestamp.valueOf(boundary));
+    }
+
+    public List<Stat> findStatsBefore(LocalDateTime boundary) {
+        return jdbcTemplate.query("SELECT a.name AS app, u.name AS uri, s.hits FROM (SELECT app_id, uri_id, COUNT(*) AS hits " +
+                        "FROM statistics WHERE timestamp < ? GROUP BY app_id, uri_id) s " +
+                        "JOIN apps a ON a.id = s.app_id JOIN uris u ON u.id = s.uri_id",
+                (rs, rowNum) -> new Stat(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")),
+                Timestamp.valueOf(boundary));
+    }
+
+    public List<Visitor> findVisitorsOnlyBefore(LocalDateTime boundary) {
+        return jdbcTemplate.query("SELECT a.name AS app, u.name AS uri, v.ip FROM (SELECT DISTINCT s.app_id, s.uri_id, s.ip " +
+                        "FROM statistics s WHERE s.timestamp < ? AND NOT EXISTS (SELECT 1 FROM statistics n " +
+                        "WHERE n.uri_id = s.uri_id AND n.timestamp >= ? AND n.app_id = s.app_id AND n.ip = s.ip)) v " +
+                        "JOIN apps a ON a.id = v.app_id JOIN uris u ON u.id = v.uri_id",
+                (rs, rowNum) -> new Visitor(rs.getString("app"), rs.getString("uri"),
+                        IpMapper.fromBytes(rs.getBytes("ip"))),
+                Timestamp.valueOf(boundary), Timestamp.valueOf(boundary));
+    }
+
+    private static String bounds(LocalDateTime from, LocalDateTime to) {
+        return "FOR VALUES FROM ('" + from.format(BOUND_FORMATTER) + "') TO ('" + to.format(BOUND_FORMATTER) + "')";
+    }
+}
\ No newline at end of file
@@ -4,37 +4,92 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import ru.practicum.model.Hit;
 import ru.practicum.model.Stat;
+import ru.practicum.model.Visitor;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface StatRepository extends JpaRepository<Hit, Long> {
 
-    @Query("SELECT new ru.practicum.model.Stat(h.app, h.uri, COUNT(h.uri)) " +
+    @Query("SELECT new ru.practicum.model.Stat(a.name, u.name, s.hits) " +
+            "FROM (SELECT h.appId AS appId, h.uriId AS uriId, COUNT(h.id) AS hits " +
             "FROM Hit h " +
-            "WHERE h.uri IN :uris AND h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h.uri) DESC")
-    List<Stat> findStatsByUris(List<String> uris, LocalDateTime start, LocalDateTime end);
+            "WHERE h.uriId IN :uriIds AND h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY h.appId, h.uriId) s " +
+            "JOIN App a ON a.id = s.appId " +
+            "JOIN Uri u ON u.id = s.uriId " +
+            "ORDER BY s.hits DESC")
+    List<Stat> findStatsByUris(List<Integer> uriIds, LocalDateTime start, LocalDateTime end);
 
-    @Query("SELECT new ru.practicum.model.Stat(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
+    @Query("SELECT new ru.practicum.model.Stat(a.name, u.name, s.hits) " +
+            "FROM (SELECT h.appId AS appId, h.uriId AS uriId, COUNT(DISTINCT h.ip) AS hits " +
             "FROM Hit h " +
-            "WHERE h.uri IN :uris AND h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(DISTINCT h.ip) DESC")
-    List<Stat> findStatsByUrisUnique(List<String> uris, LocalDateTime start, LocalDateTime end);
+            "WHERE h.uriId IN :uriIds AND h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY h.appId, h.uriId) s " +
+            "JOIN App a ON a.id = s.appId " +
+            "JOIN Uri u ON u.id = s.uriId " +
+            "ORDER BY s.hits DESC")
+    List<Stat> findStatsByUrisUnique(List<Integer> uriIds, LocalDateTime start, LocalDateTime end);
 
-    @Query("SELECT new ru.practicum.model.Stat(h.app, h.uri, COUNT(h.uri)) " +
+    @Query("SELECT new ru.practicum.model.Stat(a.name, u.name, s.hits) " +
+            "FROM (SELECT h.appId AS appId, h.uriId AS uriId, COUNT(DISTINCT h.ip) AS hits " +
+            "FROM Hit h " +
+            "WHERE h.uriId IN :uriIds AND h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY h.appId, h.uriId) s " +
+            "JOIN App a ON a.id = s.appId " +
+            "JOIN Uri u ON u.id = s.uriId " +
+            "ORDER BY s.hits DESC")
+    Stream<Stat> streamStatsByUrisUnique(List<Integer> uriIds, LocalDateTime start, LocalDateTime end);
+
+    @Query("SELECT new ru.practicum.model.Stat(a.name, u.name, s.hits) " +
+            "FROM (SELECT h.appId AS appId, h.uriId AS uriId, COUNT(h.id) AS hits " +
             "FROM Hit h " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(h.uri) DESC")
+            "GROUP BY h.appId, h.uriId) s " +
+            "JOIN App a ON a.id = s.appId " +
+            "JOIN Uri u ON u.id = s.uriId " +
+            "ORDER BY s.hits DESC")
     List<Stat> findAllStats(LocalDateTime start, LocalDateTime end);
 
-    @Query("SELECT new ru.practicum.model.Stat(h.app, h.uri, COUNT(DISTINCT h.ip)) " +
+    @Query("SELECT new ru.practicum.model.Stat(a.name, u.name, s.hits) " +
+            "FROM (SELECT h.appId AS appId, h.uriId AS uriId, COUNT(DISTINCT h.ip) AS hits " +
             "FROM Hit h " +
             "WHERE h.timestamp BETWEEN :start AND :end " +
-            "GROUP BY h.app, h.uri " +
-            "ORDER BY COUNT(DISTINCT h.ip) DESC")
+            "GROUP BY h.appId, h.uriId) s " +
+            "JOIN App a ON a.id = s.appId " +
+            "JOIN Uri u ON u.id = s.uriId " +
+            "ORDER BY s.hits DESC")
     List<Stat> findAllStatsUnique(LocalDateTime start, LocalDateTime end);
+
+    @Query("SELECT new ru.practicum.model.Stat(a.name, u.name, s.hits) " +
+            "FROM (SELECT h.appId AS appId, h.uriId AS uriId, COUNT(DISTINCT h.ip) AS hits " +
+            "FROM Hit h " +
+            "WHERE h.timestamp BETWEEN :start AND :end " +
+            "GROUP BY h.appId, h.uriId) s " +
+            "JOIN App a ON a.id = s.appId " +
+            "JOIN Uri u ON u.id = s.uriId " +
+            "ORDER BY s.hits DESC")
+    Stream<Stat> streamAllStatsUnique(LocalDateTime start, LocalDateTime end);
+
+    @Query("SELECT new ru.practicum.model.Stat(a.name, u.name, s.hits) " +
+            "FROM (SELECT h.appId AS appId, h.uriId AS uriId, COUNT(h.id) AS hits " +
+            "FROM Hit h " +
+            "GROUP BY h.appId, h.uriId) s " +
+            "JOIN App a ON a.id = s.appId " +
+            "JOIN Uri u ON u.id = s.uriId " +
+            "ORDER BY s.hits DESC")
+    List<Stat> findTotalStats();
+
+    @Query("SELECT new ru.practicum.model.Visitor(a.name, u.name, s.ip) " +
+            "FROM (SELECT DISTINCT h.appId AS appId, h.uriId AS uriId, h.ip AS ip FROM Hit h) s " +
+            "JOIN App a ON a.id = s.appId " +
+            "JOIN Uri u ON u.id = s.uriId")
+    Stream<Visitor> streamVisitors();
+
+    @Query("SELECT MIN(h.timestamp) FROM Hit h")
+    LocalDateTime findFirstTimestamp();
+
+    @Query("SELECT MAX(h.timestamp) FROM Hit h")
+    LocalDateTime findLastTimestamp();
 }
\ No newline at end of file
@@ -0,0 +1,107 @@
+package ru.practicum.repository;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+import ru.practicum.rollup.Rollup;
+import ru.practicum.rollup.RollupSegment;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+@Repository
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class StatRollupRepository {
+    private static final String UPSERT = "INSERT INTO %s (bucket, app_id, uri_id, hits) " +
+            "VALUES (:bucket, :appId, :uriId, :hits) ON CONFLICT (bucket, app_id, uri_id) DO UPDATE SET hits = %<s.hits + EXCLUDED.hits";
+
+    private static final RowMapper<Stat> STAT_ROW_MAPPER =
+            (rs, rowNum) -> new Stat(rs.getString("app"), rs.getString("uri"), rs.getLong("hits"));
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public void increment(List<Hit> hits) {
+        for (Rollup rollup : Rollup.values()) {
+            Map<BucketKey, Long> counts = new HashMap<>();
+            for (Hit hit : hits) {
+                counts.merge(new BucketKey(rollup.floor(hit.getTimestamp()), hit.getAppId(), hit.getUriId()), 1L, Long::sum);
+            }
+            MapSqlParameterSource[] batch = counts.entrySet().stream()
+                    .map(e -> new MapSqlParameterSource()
+                            .addValue("bucket", Timestamp.valueOf(e.getKey().bucket))
+                            .addValue("appId", e.getKey().appId)
+                            .addValue("uriId", e.getKey().uriId)
+                            .addValue("hits", e.getValue()))
+                    .toArray(MapSqlParameterSource[]::new);
+            jdbcTemplate.batchUpdate(String.format(UPSERT, rollup.getTable()), batch);
+        }
+    }
+
+    public List<Stat> findStats(List<RollupSegment> segments, List<Integer> uriIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        return jdbcTemplate.query(buildQuery(segments, uriIds, params), params, STAT_ROW_MAPPER);
+    }
+
+    public void streamStats(List<RollupSegment> segments, List<Integer> uriIds, Consumer<Stat> consumer) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        jdbcTemplate.query(buildQuery(segments, uriIds, params), params,
+                (RowCallbackHandler) rs -> consumer.accept(STAT_ROW_MAPPER.mapRow(rs, 0)));
+    }
+
+    private static String buildQuery(List<RollupSegment> segments, List<Integer> uriIds, MapSqlParameterSource params) {
+        List<String> selects = new ArrayList<>();
+        for (int i = 0; i < segments.size(); i++) {
+            RollupSegment segment = segments.get(i);
+            StringBuilder select = new StringBuilder();
+            if (segment.isRaw()) {
+                select.append("SELECT app_id, uri_id, COUNT(*) AS hits FROM statistics WHERE timestamp >= :from").append(i)
+                        .append(" AND timestamp ").append(segment.isToInclusive() ? "<= " : "< ").append(":to").append(i);
+            } else {
+                select.append("SELECT app_id, uri_id, SUM(hits) AS hits FROM ").append(segment.getRollup().getTable())
+                        .append(" WHERE bucket >= :from").append(i).append(" AND bucket < :to").append(i);
+            }
+            if (uriIds != null) {
+                select.append(" AND uri_id = ANY(:uriIds)");
+            }
+            select.append(" GROUP BY app_id, uri_id");
+            selects.add(select.toString());
+            params.addValue("from" + i, Timestamp.valueOf(segment.getFrom()));
+            params.addValue("to" + i, Timestamp.valueOf(segment.getTo()));
+        }
+        if (uriIds != null) {
+            params.addValue("uriIds", uriIds.toArray(Integer[]::new));
+        }
+        return "SELECT a.name AS app, u.name AS uri, s.hits FROM (SELECT app_id, uri_id, SUM(hits) AS hits FROM (" +
+                String.join(" UNION ALL ", selects) + ") r GROUP BY app_id, uri_id) s " +
+                "JOIN apps a ON a.id = s.app_id JOIN uris u ON u.id = s.uri_id ORDER BY s.hits DESC";
+    }
+
+    public void deleteBefore(LocalDateTime boundary) {
+        for (Rollup rollup : Rollup.values()) {
+            jdbcTemplate.update("DELETE FROM " + rollup.getTable() + " WHERE bucket < :boundary",
+                    new MapSqlParameterSource("boundary", Timestamp.valueOf(boundary)));
+        }
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class BucketKey {
+        private final LocalDateTime bucket;
+        private final int appId;
+        private final int uriId;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,106 @@
+package ru.practicum.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.model.StatKey;
+import ru.practicum.model.StatSlice;
+import ru.practicum.model.TimelineStat;
+import ru.practicum.rollup.Rollup;
+
+import java.nio.ByteBuffer;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Repository
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "jdbc", matchIfMissing = true)
+@RequiredArgsConstructor
+public class StatTimelineRepository {
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    /**
+     * Целые интервалы берутся из rollup-таблицы того же размера, неполные интервалы на краях
+     * диапазона досчитываются по сырым hit'ам через date_trunc.
+     */
+    public List<TimelineStat> findHits(Rollup bucket, LocalDateTime start, LocalDateTime end, List<Integer> uriIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String uriFilter = addUriFilter(params, uriIds);
+        LocalDateTime from = bucket.ceil(start);
+        LocalDateTime to = bucket.floor(end);
+        List<String> selects = new ArrayList<>();
+        if (from.isBefore(to)) {
+            params.addValue("from", Timestamp.valueOf(from));
+            params.addValue("to", Timestamp.valueOf(to));
+            selects.add("SELECT bucket, app_id, uri_id, SUM(hits) AS hits FROM " + bucket.getTable() +
+                    " WHERE bucket >= :from AND bucket < :to" + uriFilter + " GROUP BY bucket, app_id, uri_id");
+            selects.add(rawSelect(bucket, "COUNT(*)", "timestamp >= :start AND timestamp < :from" + uriFilter));
+            selects.add(rawSelect(bucket, "COUNT(*)", "timestamp >= :to AND timestamp <= :end" + uriFilter));
+        } else {
+            selects.add(rawSelect(bucket, "COUNT(*)", "timestamp >= :start AND timestamp <= :end" + uriFilter));
+        }
+        return query(String.join(" UNION ALL ", selects), params);
+    }
+
+    public List<TimelineStat> findUniqueHits(Rollup bucket, LocalDateTime start, LocalDateTime end,
+                                             List<Integer> uriIds) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", Timestamp.valueOf(start))
+                .addValue("end", Timestamp.valueOf(end));
+        String uriFilter = addUriFilter(params, uriIds);
+        return query(rawSelect(bucket, "COUNT(DISTINCT ip)", "timestamp >= :start AND timestamp <= :end" + uriFilter),
+                params);
+    }
+
+    /**
+     * Собирает различные IP сырых hit'ов по интервалам, чтобы объединить их с архивом.
+     */
+    public void collectVisitors(Rollup bucket, LocalDateTime from, LocalDateTime to, boolean toInclusive,
+                                List<Integer> uriIds, Map<LocalDateTime, StatSlice> target) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String where = "timestamp >= :from AND timestamp " + (toInclusive ? "<=" : "<") + " :to" +
+                addUriFilter(params, uriIds);
+        String sql = "SELECT s.bucket, a.name AS app, u.name AS uri, s.ip FROM (SELECT DISTINCT date_trunc('" +
+                bucket.getTruncField() + "', timestamp) AS bucket, app_id, uri_id, ip FROM statistics WHERE " + where +
+                ") s JOIN apps a ON a.id = s.app_id JOIN uris u ON u.id = s.uri_id";
+        Map<String, StatKey> keys = new HashMap<>();
+        jdbcTemplate.query(sql, params, rs -> {
+            String app = rs.getString("app");
+            String uri = rs.getString("uri");
+            StatKey key = keys.computeIfAbsent(app + '\n' + uri, k -> new StatKey(app, uri));
+            ByteBuffer ip = ByteBuffer.wrap(rs.getBytes("ip"));
+            target.computeIfAbsent(rs.getTimestamp("bucket").toLocalDateTime(), k -> new StatSlice())
+                    .addVisitor(key, ip.getLong(), ip.getLong());
+        });
+    }
+
+    private List<TimelineStat> query(String select, MapSqlParameterSource params) {
+        return jdbcTemplate.query("SELECT s.bucket, a.name AS app, u.name AS uri, s.hits FROM (" + select + ") s " +
+                        "JOIN apps a ON a.id = s.app_id JOIN uris u ON u.id = s.uri_id ORDER BY s.bucket, s.hits DESC",
+                params,
+                (rs, rowNum) -> new TimelineStat(rs.getTimestamp("bucket").toLocalDateTime(), rs.getString("app"),
+                        rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    private static String rawSelect(Rollup bucket, String count, String where) {
+        return "SELECT date_trunc('" + bucket.getTruncField() + "', timestamp) AS bucket, app_id, uri_id, " +
+                count + " AS hits FROM statistics WHERE " + where + " GROUP BY 1, app_id, uri_id";
+    }
+
+    private static String addUriFilter(MapSqlParameterSource params, List<Integer> uriIds) {
+        if (uriIds == null) {
+            return "";
+        }
+        params.addValue("uriIds", uriIds.toArray(Integer[]::new));
+        return " AND uri_id = ANY(:uriIds)";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,48 @@
+package ru.practicum.rollup;
+
+import lombok.Getter;
+import ru.practicum.exceptions.ValidationRequestException;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+@Getter
+public enum Rollup {
+    DAY("statistics_day", ChronoUnit.DAYS, "day", "1d"),
+    HOUR("statistics_hour", ChronoUnit.HOURS, "hour", "1h"),
+    MINUTE("statistics_minute", ChronoUnit.MINUTES, "minute", "1m");
+
+    private final String table;
+    private final ChronoUnit unit;
+    private final String truncField;
+    private final String value;
+
+    Rollup(String table, ChronoUnit unit, String truncField, String value) {
+        this.table = table;
+        this.unit = unit;
+        this.truncField = truncField;
+        this.value = value;
+    }
+
+    public static Rollup from(String value) {
+        for (Rollup rollup : values()) {
+            if (rollup.value.equalsIgnoreCase(value)) {
+                return rollup;
+            }
+        }
+        throw new ValidationRequestException("Неизвестное значение параметра 'bucket': " + value);
+    }
+
+    public long getSeconds() {
+        return unit.getDuration().getSeconds();
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,45 @@
+package ru.practicum.rollup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Раскладывает диапазон [start, end] (или [start, end)) на целые бакеты самых крупных rollup-таблиц
+ * и сырые края, которые не покрываются ни одним целым бакетом.
+ */
+public class RollupPlanner {
+
+    private RollupPlanner() {
+    }
+
+    public static List<RollupSegment> plan(LocalDateTime start, LocalDateTime end) {
+        return plan(start, end, true);
+    }
+
+    public static List<RollupSegment> plan(LocalDateTime start, LocalDateTime end, boolean endInclusive) {
+        List<RollupSegment> segments = new ArrayList<>();
+        split(start, end, endInclusive, 0, segments);
+        return segments;
+    }
+
+    private static void split(LocalDateTime from, LocalDateTime to, boolean toInclusive, int level,
+                              List<RollupSegment> segments) {
+        if (from.isAfter(to) || (!toInclusive && !from.isBefore(to))) {
+            return;
+        }
+        Rollup[] rollups = Rollup.values();
+        for (int i = level; i < rollups.length; i++) {
+            Rollup rollup = rollups[i];
+            LocalDateTime first = rollup.ceil(from);
+            LocalDateTime last = rollup.floor(to);
+            if (first.isBefore(last)) {
+                split(from, first, false, i + 1, segments);
+                segments.add(new RollupSegment(rollup, first, last, false));
+                split(last, to, toInclusive, i + 1, segments);
+                return;
+            }
+        }
+        segments.add(new RollupSegment(null, from, to, toInclusive));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,25 @@
+package ru.practicum.rollup;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.ToString;
+
+import java.time.LocalDateTime;
+
+/**
+ * Часть диапазона запроса: либо целые бакеты одной из rollup-таблиц, либо сырые hit'ы.
+ * Для rollup-сегмента {@code to} всегда исключается.
+ */
+@Getter
+@ToString
+@AllArgsConstructor
+public class RollupSegment {
+    private final Rollup rollup;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final boolean toInclusive;
+
+    public boolean isRaw() {
+        return rollup == null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+package ru.practicum.segment;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Сегмент фиксированного размера, отображённый в память.
+ * Заголовок: magic, версия, базовое время (секунды), число подтверждённых записей, min/max смещение времени.
+ * Запись фиксированной ширины: смещение времени от базового (int), id приложения (char), id uri (int), IP (16 байт).
+ */
+class Segment implements AutoCloseable {
+    static final int HEADER_SIZE = 64;
+    static final int RECORD_SIZE = Integer.BYTES + Character.BYTES + Integer.BYTES + 2 * Long.BYTES;
+
+    private static final int MAGIC = 0x45574d53;
+    private static final int VERSION = 1;
+    private static final int COUNT_OFFSET = 16;
+    private static final int MIN_DELTA_OFFSET = 20;
+    private static final int MAX_DELTA_OFFSET = 24;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final long base;
+    private final int capacity;
+    private int pending;
+    private int minDelta;
+    private int maxDelta;
+    private volatile int count;
+
+    private Segment(Path path, FileChannel channel, MappedByteBuffer buffer, long base) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.base = base;
+        this.capacity = (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    static Segment create(Path path, int size, long base) {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(8, base);
+            buffer.putInt(COUNT_OFFSET, 0);
+            buffer.putInt(MIN_DELTA_OFFSET, Integer.MAX_VALUE);
+            buffer.putInt(MAX_DELTA_OFFSET, Integer.MIN_VALUE);
+            buffer.force();
+            Segment segment = new Segment(path, channel, buffer, base);
+            segment.minDelta = Integer.MAX_VALUE;
+            segment.maxDelta = Integer.MIN_VALUE;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось создать сегмент " + path, e);
+        }
+    }
+
+    static Segment open(Path path) {
+        try {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                channel.close();
+                throw new IllegalStateException("Неизвестный формат сегмента " + path);
+            }
+            Segment segment = new Segment(path, channel, buffer, buffer.getLong(8));
+            segment.pending = buffer.getInt(COUNT_OFFSET);
+            segment.count = segment.pending;
+            segment.minDelta = buffer.getInt(MIN_DELTA_OFFSET);
+            segment.maxDelta = buffer.getInt(MAX_DELTA_OFFSET);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть сегмент " + path, e);
+        }
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    int count() {
+        return count;
+    }
+
+    boolean canAppend(long epochSecond) {
+        long delta = epochSecond - base;
+        return pending < capacity && delta >= Integer.MIN_VALUE && delta <= Integer.MAX_VALUE;
+    }
+
+    void append(long epochSecond, int appId, int uriId, byte[] ip) {
+        int delta = (int) (epochSecond - base);
+        ByteBuffer record = buffer.duplicate().position(HEADER_SIZE + pending * RECORD_SIZE);
+        record.putInt(delta).putChar((char) appId).putInt(uriId).put(ip);
+        minDelta = Math.min(minDelta, delta);
+        maxDelta = Math.max(maxDelta, delta);
+        pending++;
+    }
+
+    /**
+     * Сбрасывает на диск записи, ещё не подтверждённые {@link #commit()}, не меняя заголовок.
+     */
+    void sync() {
+        if (pending == count) {
+            return;
+        }
+        buffer.force(HEADER_SIZE + count * RECORD_SIZE, (pending - count) * RECORD_SIZE);
+    }
+
+    /**
+     * Отбрасывает записи, дописанные после последнего {@link #commit()}: следующий append их перезапишет.
+     */
+    void rollback() {
+        pending = count;
+        minDelta = buffer.getInt(MIN_DELTA_OFFSET);
+        maxDelta = buffer.getInt(MAX_DELTA_OFFSET);
+    }
+
+    /**
+     * Сбрасывает записанные записи на диск и только после этого делает их видимыми для чтения.
+     */
+    void commit() {
+        if (pending == count) {
+            return;
+        }
+        buffer.putInt(MIN_DELTA_OFFSET, minDelta);
+        buffer.putInt(MAX_DELTA_OFFSET, maxDelta);
+        buffer.putInt(COUNT_OFFSET, pending);
+        buffer.force();
+        count = pending;
+    }
+
+    long firstSecond() {
+        return count == 0 ? Long.MAX_VALUE : base + buffer.getInt(MIN_DELTA_OFFSET);
+    }
+
+    long lastSecond() {
+        return count == 0 ? Long.MIN_VALUE : base + buffer.getInt(MAX_DELTA_OFFSET);
+    }
+
+    boolean overlaps(long fromSecond, long toSecond) {
+        return count > 0 && firstSecond() <= toSecond && lastSecond() >= fromSecond;
+    }
+
+    void scan(int from, int to, long fromSecond, long toSecond, RecordConsumer consumer) {
+        ByteBuffer view = buffer.duplicate();
+        for (int i = from; i < to; i++) {
+            int position = HEADER_SIZE + i * RECORD_SIZE;
+            long second = base + view.getInt(position);
+            if (second < fromSecond || second > toSecond) {
+                continue;
+            }
+            consumer.accept(second, view.getChar(position + 4), view.getInt(position + 6),
+                    view.getLong(position + 10), view.getLong(position + 18));
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        commit();
+        channel.close();
+    }
+
+    @FunctionalInterface
+    interface RecordConsumer {
+        void accept(long epochSecond, int appId, int uriId, long ipHigh, long ipLow);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,93 @@
+package ru.practicum.segment;
+
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import ru.practicum.model.StatKey;
+import ru.practicum.model.StatSlice;
+import ru.practicum.sketch.HyperLogLog;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.IntFunction;
+
+/**
+ * Частичный результат агрегации по части сегмента. Ключ — (id приложения << 32) | id uri.
+ */
+class SegmentAggregation {
+    private final boolean unique;
+    private final boolean approx;
+    private final Map<Long, long[]> hits = new HashMap<>();
+    private final Map<Long, Set<IpKey>> ips = new HashMap<>();
+    private final Map<Long, HyperLogLog> sketches = new HashMap<>();
+
+    SegmentAggregation(boolean unique, boolean approx) {
+        this.unique = unique;
+        this.approx = approx;
+    }
+
+    static long key(int appId, int uriId) {
+        return ((long) appId << 32) | (uriId & 0xffffffffL);
+    }
+
+    static int appId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int uriId(long key) {
+        return (int) key;
+    }
+
+    void add(long key, long ipHigh, long ipLow) {
+        if (!unique) {
+            hits.computeIfAbsent(key, k -> new long[1])[0]++;
+        } else if (approx) {
+            sketches.computeIfAbsent(key, k -> new HyperLogLog()).addHash(HyperLogLog.hash(ipHigh, ipLow));
+        } else {
+            ips.computeIfAbsent(key, k -> new HashSet<>()).add(new IpKey(ipHigh, ipLow));
+        }
+    }
+
+    SegmentAggregation merge(SegmentAggregation other) {
+        other.hits.forEach((key, count) -> hits.computeIfAbsent(key, k -> new long[1])[0] += count[0]);
+        other.ips.forEach((key, set) -> ips.merge(key, set, (a, b) -> {
+            a.addAll(b);
+            return a;
+        }));
+        other.sketches.forEach((key, sketch) -> sketches.merge(key, sketch, HyperLogLog::merge));
+        return this;
+    }
+
+    Map<Long, Long> result() {
+        Map<Long, Long> result = new HashMap<>();
+        hits.forEach((key, count) -> result.put(key, count[0]));
+        ips.forEach((key, set) -> result.put(key, (long) set.size()));
+        sketches.forEach((key, sketch) -> result.put(key, sketch.estimate()));
+        return result;
+    }
+
+    StatSlice toSlice(IntFunction<String> appNames, IntFunction<String> uriNames) {
+        StatSlice slice = new StatSlice();
+        Map<Long, StatKey> keys = new HashMap<>();
+        hits.forEach((key, count) -> slice.addHits(statKey(keys, key, appNames, uriNames), count[0]));
+        ips.forEach((key, set) -> {
+            StatKey statKey = statKey(keys, key, appNames, uriNames);
+            set.forEach(ip -> slice.addVisitor(statKey, ip.high, ip.low));
+        });
+        sketches.forEach((key, sketch) -> slice.addSketch(statKey(keys, key, appNames, uriNames), sketch));
+        return slice;
+    }
+
+    private static StatKey statKey(Map<Long, StatKey> keys, long key, IntFunction<String> appNames,
+                                   IntFunction<String> uriNames) {
+        return keys.computeIfAbsent(key, k -> new StatKey(appNames.apply(appId(k)), uriNames.apply(uriId(k))));
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    static final class IpKey {
+        private final long high;
+        private final long low;
+    }
+}
\ No newline at end of file
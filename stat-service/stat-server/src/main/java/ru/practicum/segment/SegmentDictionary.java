@@ -0,0 +1,115 @@
+package ru.practicum.segment;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Словарь строк, хранящийся в append-only файле записями [длина][UTF-8]. Идентификатор строки — её порядковый номер.
+ */
+@Slf4j
+class SegmentDictionary implements AutoCloseable {
+    private final FileChannel channel;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final List<String> values = new ArrayList<>();
+    private boolean dirty;
+
+    SegmentDictionary(Path path) {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть словарь " + path, e);
+        }
+    }
+
+    Integer find(String value) {
+        return ids.get(value);
+    }
+
+    synchronized int idOf(String value) {
+        Integer id = ids.get(value);
+        if (id != null) {
+            return id;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(Integer.BYTES + bytes.length).putInt(bytes.length).put(bytes).flip();
+        try {
+            while (entry.hasRemaining()) {
+                channel.write(entry, channel.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось дописать словарь", e);
+        }
+        values.add(value);
+        ids.put(value, values.size() - 1);
+        dirty = true;
+        return values.size() - 1;
+    }
+
+    synchronized String valueOf(int id) {
+        return values.get(id);
+    }
+
+    synchronized List<String> values() {
+        return List.copyOf(values);
+    }
+
+    synchronized int size() {
+        return values.size();
+    }
+
+    synchronized void sync() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось синхронизировать словарь", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private void load() throws IOException {
+        ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+        while (content.hasRemaining()) {
+            if (channel.read(content, content.position()) < 0) {
+                break;
+            }
+        }
+        content.flip();
+        while (content.remaining() >= Integer.BYTES) {
+            int length = content.getInt(content.position());
+            if (length < 0 || content.remaining() < Integer.BYTES + length) {
+                break;
+            }
+            content.position(content.position() + Integer.BYTES);
+            byte[] bytes = new byte[length];
+            content.get(bytes);
+            String value = new String(bytes, StandardCharsets.UTF_8);
+            values.add(value);
+            ids.put(value, values.size() - 1);
+        }
+        if (content.position() < channel.size()) {
+            log.warn("Словарь обрезан до последней целой записи: {} из {} байт", content.position(), channel.size());
+            channel.truncate(content.position());
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,367 @@
+package ru.practicum.segment;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.StatSlice;
+import ru.practicum.model.TimelineStat;
+import ru.practicum.model.Visitor;
+import ru.practicum.repository.HitStorage;
+import ru.practicum.rollup.Rollup;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.LatencyHistogram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Хранилище hit'ов без PostgreSQL: append-only сегменты в memory-mapped файлах и словари app/uri.
+ * Агрегация по диапазону сканирует подходящие сегменты параллельно кусками по SCAN_CHUNK записей.
+ */
+@Slf4j
+@Repository
+@ConditionalOnProperty(name = "stat-server.storage", havingValue = "segment")
+public class SegmentHitStorage implements HitStorage {
+    private static final int SCAN_CHUNK = 1 << 18;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+
+    private final Path dir;
+    private final int segmentSize;
+    private final ForkJoinPool scanPool;
+    private final List<Segment> segments = new CopyOnWriteArrayList<>();
+    private SegmentDictionary apps;
+    private SegmentDictionary uris;
+    private SegmentLatency latency;
+    private Segment active;
+
+    public SegmentHitStorage(@Value("${stat-server.segment.dir:data/segments}") String dir,
+                             @Value("${stat-server.segment.size-mb:64}") int segmentSizeMb,
+                             @Value("${stat-server.segment.scan-parallelism:0}") int scanParallelism) {
+        this.dir = Path.of(dir);
+        this.segmentSize = segmentSizeMb * 1024 * 1024;
+        this.scanPool = new ForkJoinPool(scanParallelism > 0 ? scanParallelism : Runtime.getRuntime().availableProcessors());
+    }
+
+    @PostConstruct
+    public void open() throws IOException {
+        Files.createDirectories(dir);
+        apps = new SegmentDictionary(dir.resolve("apps.dict"));
+        uris = new SegmentDictionary(dir.resolve("uris.dict"));
+        latency = new SegmentLatency(dir.resolve("latency.dat"));
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .forEach(path -> segments.add(Segment.open(path)));
+        }
+        if (!segments.isEmpty()) {
+            active = segments.get(segments.size() - 1);
+        }
+        log.info("Открыто {} сегментов в {}, приложений: {}, uri: {}", segments.size(), dir, apps.size(), uris.size());
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        apps.close();
+        uris.close();
+        latency.close();
+        scanPool.shutdown();
+    }
+
+    /**
+     * Пакет становится видимым целиком или не становится вовсе: сегменты, заполненные пакетом, подтверждаются
+     * только в конце, а при ошибке их неподтверждённые записи отбрасываются, чтобы повтор пакета из буфера
+     * не записал hit'ы дважды. Гистограммы времени ответа дописываются после подтверждения, и ошибка их записи
+     * не возвращает пакет в буфер.
+     */
+    @Override
+    public synchronized void saveAll(List<Hit> hits) {
+        Map<SegmentLatency.HourKey, LatencyHistogram> histograms = new HashMap<>();
+        List<Segment> touched = new ArrayList<>();
+        try {
+            for (Hit hit : hits) {
+                long second = toSecond(hit.getTimestamp());
+                if (active == null || !active.canAppend(second)) {
+                    active = Segment.create(dir.resolve(segmentName(segments.size())), segmentSize, second);
+                    segments.add(active);
+                }
+                if (touched.isEmpty() || touched.get(touched.size() - 1) != active) {
+                    touched.add(active);
+                }
+                int appId = apps.idOf(hit.getApp());
+                if (appId > Character.MAX_VALUE) {
+                    throw new IllegalStateException("Превышено число приложений в сегментном хранилище: " + appId);
+                }
+                int uriId = uris.idOf(hit.getUri());
+                active.append(second, appId, uriId, IpMapper.toBytes(hit.getIp()));
+                if (hit.getResponseTimeMs() != null) {
+                    histograms.computeIfAbsent(new SegmentLatency.HourKey(hourOf(second), uriId),
+                            k -> new LatencyHistogram()).record(hit.getResponseTimeMs());
+                }
+            }
+            apps.sync();
+            uris.sync();
+            // записи всех сегментов на диске до того, как первый из них станет видимым
+            touched.forEach(Segment::sync);
+            touched.forEach(Segment::commit);
+        } catch (RuntimeException e) {
+            touched.forEach(Segment::rollback);
+            throw e;
+        }
+        try {
+            latency.append(histograms);
+            latency.sync();
+        } catch (RuntimeException e) {
+            log.error("Не удалось записать время ответа для пакета из {} hit'ов", hits.size(), e);
+        }
+    }
+
+    @Override
+    public List<Stat> findStats(LocalDateTime start, LocalDateTime end, List<String> uriList, boolean unique,
+                                StatPrecision precision) {
+        Set<Integer> uriIds = findUriIds(uriList);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Long> result = aggregate(toSecond(start), toSecond(end), uriIds, unique,
+                precision == StatPrecision.APPROX).result();
+        return result.entrySet().stream()
+                .map(e -> new Stat(apps.valueOf(SegmentAggregation.appId(e.getKey())),
+                        uris.valueOf(SegmentAggregation.uriId(e.getKey())), e.getValue()))
+                .sorted(Comparator.comparing(Stat::getHits).reversed())
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public StatSlice findSlice(LocalDateTime start, LocalDateTime end, boolean endInclusive, List<String> uriList,
+                               boolean unique, StatPrecision precision) {
+        Set<Integer> uriIds = findUriIds(uriList);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return new StatSlice();
+        }
+        // hit'ы хранятся с точностью до секунды: последняя секунда [start, end) — та, что начинается раньше end
+        long lastSecond = endInclusive || end.getNano() > 0 ? toSecond(end) : toSecond(end) - 1;
+        return aggregate(toSecond(start), lastSecond, uriIds, unique, precision == StatPrecision.APPROX)
+                .toSlice(apps::valueOf, uris::valueOf);
+    }
+
+    @Override
+    public List<TimelineStat> findTimeline(LocalDateTime start, LocalDateTime end, List<String> uriList, Rollup bucket,
+                                           boolean unique) {
+        Set<Integer> uriIds = findUriIds(uriList);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return List.of();
+        }
+        long fromSecond = toSecond(start);
+        long toSecond = toSecond(end);
+        long bucketSeconds = bucket.getSeconds();
+        List<ScanTask> tasks = scanTasks(fromSecond, toSecond);
+        Map<Long, SegmentAggregation> buckets = scanPool.submit(() -> tasks.parallelStream()
+                .map(task -> {
+                    Map<Long, SegmentAggregation> partial = new HashMap<>();
+                    task.segment.scan(task.from, task.to, fromSecond, toSecond, (second, appId, uriId, ipHigh, ipLow) -> {
+                        if (uriIds == null || uriIds.contains(uriId)) {
+                            partial.computeIfAbsent(Math.floorDiv(second, bucketSeconds) * bucketSeconds,
+                                            b -> new SegmentAggregation(unique, false))
+                                    .add(SegmentAggregation.key(appId, uriId), ipHigh, ipLow);
+                        }
+                    });
+                    return partial;
+                })
+                .reduce((a, b) -> {
+                    b.forEach((second, aggregation) -> a.merge(second, aggregation, SegmentAggregation::merge));
+                    return a;
+                })
+                .orElseGet(HashMap::new)).join();
+        List<TimelineStat> result = new ArrayList<>();
+        buckets.forEach((second, aggregation) -> aggregation.result().forEach((key, hits) ->
+                result.add(new TimelineStat(toDateTime(second), apps.valueOf(SegmentAggregation.appId(key)),
+                        uris.valueOf(SegmentAggregation.uriId(key)), hits))));
+        result.sort(Comparator.comparing(TimelineStat::getBucket)
+                .thenComparing(Comparator.comparing(TimelineStat::getHits).reversed()));
+        return result;
+    }
+
+    @Override
+    public LatencyHistogram findLatency(LocalDateTime start, LocalDateTime end, List<String> uriList) {
+        Set<Integer> uriIds = findUriIds(uriList);
+        if (uriIds != null && uriIds.isEmpty()) {
+            return new LatencyHistogram();
+        }
+        return latency.find(hourOf(toSecond(start)), hourOf(toSecond(end)), uriIds);
+    }
+
+    @Override
+    public List<Stat> findTotalStats() {
+        return aggregate(Long.MIN_VALUE, Long.MAX_VALUE, null, false, false).result().entrySet().stream()
+                .map(e -> new Stat(apps.valueOf(SegmentAggregation.appId(e.getKey())),
+                        uris.valueOf(SegmentAggregation.uriId(e.getKey())), e.getValue()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public long hashIp(String ip) {
+        ByteBuffer bytes = ByteBuffer.wrap(IpMapper.toBytes(ip));
+        return HyperLogLog.hash(bytes.getLong(), bytes.getLong());
+    }
+
+    @Override
+    public List<String> findUris() {
+        return uris.values();
+    }
+
+    @Override
+    public void forEachVisitor(Consumer<Visitor> consumer) {
+        Set<VisitorKey> seen = new HashSet<>();
+        for (Segment segment : segments) {
+            segment.scan(0, segment.count(), Long.MIN_VALUE, Long.MAX_VALUE, (second, appId, uriId, ipHigh, ipLow) -> {
+                if (seen.add(new VisitorKey(SegmentAggregation.key(appId, uriId), ipHigh, ipLow))) {
+                    consumer.accept(new Visitor(apps.valueOf(appId), uris.valueOf(uriId), ipOf(ipHigh, ipLow)));
+                }
+            });
+        }
+    }
+
+    @Override
+    public LocalDateTime findFirstTimestamp() {
+        long first = segments.stream().mapToLong(Segment::firstSecond).min().orElse(Long.MAX_VALUE);
+        return first == Long.MAX_VALUE ? null : toDateTime(first);
+    }
+
+    @Override
+    public LocalDateTime findLastTimestamp() {
+        long last = segments.stream().mapToLong(Segment::lastSecond).max().orElse(Long.MIN_VALUE);
+        return last == Long.MIN_VALUE ? null : toDateTime(last);
+    }
+
+    /**
+     * Отметка hit'а — его порядковый номер среди записей всех сегментов: сегменты только дописываются,
+     * а заполненный сегмент больше не меняется.
+     */
+    @Override
+    public long findLastHitId() {
+        return segments.stream().mapToLong(Segment::count).sum();
+    }
+
+    @Override
+    public void forEachHitAfter(long lastHitId, Consumer<Hit> consumer) {
+        long offset = 0;
+        for (Segment segment : segments) {
+            int count = segment.count();
+            if (offset + count > lastHitId) {
+                segment.scan((int) Math.max(0, lastHitId - offset), count, Long.MIN_VALUE, Long.MAX_VALUE,
+                        (second, appId, uriId, ipHigh, ipLow) -> consumer.accept(Hit.builder()
+                                .appId(appId)
+                                .uriId(uriId)
+                                .app(apps.valueOf(appId))
+                                .uri(uris.valueOf(uriId))
+                                .ip(ipOf(ipHigh, ipLow))
+                                .timestamp(toDateTime(second))
+                                .build()));
+            }
+            offset += count;
+        }
+    }
+
+    private SegmentAggregation aggregate(long fromSecond, long toSecond, Set<Integer> uriIds, boolean unique,
+                                         boolean approx) {
+        List<ScanTask> tasks = scanTasks(fromSecond, toSecond);
+        return scanPool.submit(() -> tasks.parallelStream()
+                .map(task -> {
+                    SegmentAggregation aggregation = new SegmentAggregation(unique, approx);
+                    task.segment.scan(task.from, task.to, fromSecond, toSecond, (second, appId, uriId, ipHigh, ipLow) -> {
+                        if (uriIds == null || uriIds.contains(uriId)) {
+                            aggregation.add(SegmentAggregation.key(appId, uriId), ipHigh, ipLow);
+                        }
+                    });
+                    return aggregation;
+                })
+                .reduce(SegmentAggregation::merge)
+                .orElseGet(() -> new SegmentAggregation(unique, approx))).join();
+    }
+
+    private List<ScanTask> scanTasks(long fromSecond, long toSecond) {
+        List<ScanTask> tasks = new ArrayList<>();
+        for (Segment segment : segments) {
+            int count = segment.count();
+            if (!segment.overlaps(fromSecond, toSecond)) {
+                continue;
+            }
+            for (int from = 0; from < count; from += SCAN_CHUNK) {
+                tasks.add(new ScanTask(segment, from, Math.min(count, from + SCAN_CHUNK)));
+            }
+        }
+        return tasks;
+    }
+
+    private Set<Integer> findUriIds(List<String> uriList) {
+        if (uriList == null) {
+            return null;
+        }
+        return uriList.stream().map(uris::find).filter(Objects::nonNull).collect(Collectors.toSet());
+    }
+
+    private static String segmentName(int index) {
+        return String.format("%s%06d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX);
+    }
+
+    private static String ipOf(long ipHigh, long ipLow) {
+        return IpMapper.fromBytes(ByteBuffer.allocate(IpMapper.IP_BYTES).putLong(ipHigh).putLong(ipLow).array());
+    }
+
+    private static long hourOf(long second) {
+        return Math.floorDiv(second, Rollup.HOUR.getSeconds()) * Rollup.HOUR.getSeconds();
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toDateTime(long second) {
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+    }
+
+    @AllArgsConstructor
+    private static final class ScanTask {
+        private final Segment segment;
+        private final int from;
+        private final int to;
+    }
+
+    @EqualsAndHashCode
+    @AllArgsConstructor
+    private static final class VisitorKey {
+        private final long key;
+        private final long ipHigh;
+        private final long ipLow;
+    }
+}
\ No newline at end of file
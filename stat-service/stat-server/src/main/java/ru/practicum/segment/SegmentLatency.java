@@ -0,0 +1,154 @@
+package ru.practicum.segment;
+
+import lombok.EqualsAndHashCode;
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.sketch.LatencyHistogram;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Почасовые гистограммы времени ответа по uri. Каждый пакет дописывается в файл приращениями
+ * [час в секундах][id uri][длина][гистограмма], при чтении приращения одного ключа объединяются.
+ * Когда файл вырастает вдвое с последнего сжатия, он переписывается по одной записи на ключ.
+ */
+@Slf4j
+class SegmentLatency implements AutoCloseable {
+    private static final int HEADER = Long.BYTES + Integer.BYTES + Integer.BYTES;
+    private static final long MIN_COMPACT_BYTES = 1 << 20;
+
+    private final Path path;
+    private final Map<HourKey, LatencyHistogram> histograms = new HashMap<>();
+    private FileChannel channel;
+    private long compactedBytes;
+    private boolean dirty;
+
+    SegmentLatency(Path path) {
+        this.path = path;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            load();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось открыть гистограммы времени ответа " + path, e);
+        }
+    }
+
+    synchronized void append(Map<HourKey, LatencyHistogram> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (Map.Entry<HourKey, LatencyHistogram> entry : batch.entrySet()) {
+                write(channel, entry.getKey(), entry.getValue());
+                histograms.merge(entry.getKey(), entry.getValue(), LatencyHistogram::merge);
+            }
+            dirty = true;
+            if (channel.size() > Math.max(MIN_COMPACT_BYTES, 2 * compactedBytes)) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось дописать гистограммы времени ответа", e);
+        }
+    }
+
+    synchronized LatencyHistogram find(long fromHour, long toHour, Set<Integer> uriIds) {
+        LatencyHistogram result = new LatencyHistogram();
+        histograms.forEach((key, histogram) -> {
+            if (key.hour >= fromHour && key.hour <= toHour && (uriIds == null || uriIds.contains(key.uriId))) {
+                result.merge(histogram);
+            }
+        });
+        return result;
+    }
+
+    synchronized void sync() {
+        if (!dirty) {
+            return;
+        }
+        try {
+            channel.force(false);
+            dirty = false;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Не удалось синхронизировать гистограммы времени ответа", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private void compact() throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            for (Map.Entry<HourKey, LatencyHistogram> entry : histograms.entrySet()) {
+                write(out, entry.getKey(), entry.getValue());
+            }
+            out.force(false);
+        }
+        long before = channel.size();
+        channel.close();
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        compactedBytes = channel.size();
+        dirty = false;
+        log.debug("Гистограммы времени ответа сжаты: {} -> {} байт", before, channel.size());
+    }
+
+    private static void write(FileChannel channel, HourKey key, LatencyHistogram histogram) throws IOException {
+        byte[] bytes = histogram.toBytes();
+        ByteBuffer entry = ByteBuffer.allocate(HEADER + bytes.length)
+                .putLong(key.hour).putInt(key.uriId).putInt(bytes.length).put(bytes).flip();
+        while (entry.hasRemaining()) {
+            channel.write(entry, channel.size());
+        }
+    }
+
+    private void load() throws IOException {
+        ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+        while (content.hasRemaining()) {
+            if (channel.read(content, content.position()) < 0) {
+                break;
+            }
+        }
+        content.flip();
+        while (content.remaining() >= HEADER) {
+            int length = content.getInt(content.position() + Long.BYTES + Integer.BYTES);
+            if (length < 0 || content.remaining() < HEADER + length) {
+                break;
+            }
+            HourKey key = new HourKey(content.getLong(), content.getInt());
+            content.getInt();
+            byte[] bytes = new byte[length];
+            content.get(bytes);
+            histograms.merge(key, LatencyHistogram.fromBytes(bytes), LatencyHistogram::merge);
+        }
+        if (content.position() < channel.size()) {
+            log.warn("Гистограммы времени ответа обрезаны до последней целой записи: {} из {} байт",
+                    content.position(), channel.size());
+            channel.truncate(content.position());
+        }
+    }
+
+    @EqualsAndHashCode
+    static final class HourKey {
+        private final long hour;
+        private final int uriId;
+
+        HourKey(long hour, int uriId) {
+            this.hour = hour;
+            this.uriId = uriId;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,173 @@
+package ru.practicum.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.model.Stat;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.StatSlice;
+import ru.practicum.repository.HitStorage;
+import ru.practicum.rollup.Rollup;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Делит широкий диапазон /stats на части по slice-days суток, выровненные по границе суток, и считает части
+ * параллельно на пуле из parallelism потоков. По умолчанию пул выключен (parallelism = 1), 0 — по числу
+ * процессоров. Части — полуинтервалы [начало, начало следующей), последняя включает end. Если частей больше
+ * max-slices, они укрупняются до max-slices. Счётчики частей складываются, уникальные посещения объединяются
+ * как множества IP (exact) или скетчи HyperLogLog (approx).
+ * <p>
+ * Длинный список URI из POST /stats/query так же делится на части по uri-chunk-size URI. Части не пересекаются
+ * по URI, поэтому их строки не складываются, а сливаются по убыванию hits.
+ */
+@Slf4j
+@Component
+public class StatFanOut {
+    private final HitStorage hitStorage;
+    private final int sliceDays;
+    private final int maxSlices;
+    private final int uriChunkSize;
+    private final ExecutorService executor;
+
+    public StatFanOut(HitStorage hitStorage,
+                      @Value("${stat-server.fan-out.slice-days:30}") int sliceDays,
+                      @Value("${stat-server.fan-out.max-slices:16}") int maxSlices,
+                      @Value("${stat-server.fan-out.uri-chunk-size:500}") int uriChunkSize,
+                      @Value("${stat-server.fan-out.parallelism:1}") int parallelism) {
+        this.hitStorage = hitStorage;
+        this.sliceDays = sliceDays;
+        this.maxSlices = maxSlices;
+        this.uriChunkSize = uriChunkSize;
+        int threadCount = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = threadCount > 1
+                ? Executors.newFixedThreadPool(threadCount, runnable -> {
+                    Thread thread = new Thread(runnable, "stat-slice-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+    }
+
+    public List<Stat> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                StatPrecision precision) {
+        List<LocalDateTime[]> slices = executor == null ? List.of() : slice(start, end);
+        if (slices.size() < 2) {
+            return hitStorage.findStats(start, end, uris, unique, precision);
+        }
+        log.debug("Диапазон {} - {} разбит на {} частей", start, end, slices.size());
+        List<CompletableFuture<StatSlice>> futures = new ArrayList<>(slices.size());
+        for (int i = 0; i < slices.size(); i++) {
+            LocalDateTime[] slice = slices.get(i);
+            boolean last = i == slices.size() - 1;
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> hitStorage.findSlice(slice[0], slice[1], last, uris, unique, precision), executor));
+        }
+        return join(futures).stream()
+                .reduce(StatSlice::merge)
+                .orElseGet(StatSlice::new)
+                .toStats();
+    }
+
+    /**
+     * Выдаёт статистику по списку различных URI в порядке убывания hits, считая части списка параллельно.
+     */
+    public void streamStatsByUris(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                  StatPrecision precision, Consumer<Stat> consumer) {
+        if (executor == null || uris.size() <= uriChunkSize) {
+            hitStorage.streamStats(start, end, uris, unique, precision, consumer);
+            return;
+        }
+        List<CompletableFuture<List<Stat>>> futures = new ArrayList<>();
+        for (int from = 0; from < uris.size(); from += uriChunkSize) {
+            List<String> chunk = uris.subList(from, Math.min(from + uriChunkSize, uris.size()));
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> hitStorage.findStats(start, end, chunk, unique, precision), executor));
+        }
+        log.debug("Список из {} URI разбит на {} частей", uris.size(), futures.size());
+        merge(join(futures), consumer);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> List<T> join(List<CompletableFuture<T>> futures) {
+        try {
+            return futures.stream()
+                    .map(CompletableFuture::join)
+                    .toList();
+        } catch (CompletionException e) {
+            futures.forEach(future -> future.cancel(false));
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Сливает отсортированные по убыванию hits списки частей, не собирая общий список.
+     */
+    private static void merge(List<List<Stat>> parts, Consumer<Stat> consumer) {
+        PriorityQueue<Head> heads = new PriorityQueue<>(Comparator.comparing((Head head) -> head.stat.getHits())
+                .reversed());
+        for (List<Stat> part : parts) {
+            Iterator<Stat> iterator = part.iterator();
+            if (iterator.hasNext()) {
+                heads.add(new Head(iterator.next(), iterator));
+            }
+        }
+        while (!heads.isEmpty()) {
+            Head head = heads.poll();
+            consumer.accept(head.stat);
+            if (head.rest.hasNext()) {
+                heads.add(new Head(head.rest.next(), head.rest));
+            }
+        }
+    }
+
+    /**
+     * @return границы частей: все, кроме последней, без своего конца, последняя заканчивается end включительно
+     */
+    private List<LocalDateTime[]> slice(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime firstDay = Rollup.DAY.floor(start);
+        long days = Duration.between(firstDay, end).toDays() + 1;
+        long count = (days + sliceDays - 1) / sliceDays;
+        long step = count > maxSlices ? (days + maxSlices - 1) / maxSlices : sliceDays;
+        List<LocalDateTime[]> slices = new ArrayList<>();
+        LocalDateTime from = start;
+        LocalDateTime boundary = firstDay.plusDays(step);
+        while (boundary.isBefore(end)) {
+            slices.add(new LocalDateTime[]{from, boundary});
+            from = boundary;
+            boundary = boundary.plusDays(step);
+        }
+        slices.add(new LocalDateTime[]{from, end});
+        return slices;
+    }
+
+    @AllArgsConstructor
+    private static final class Head {
+        private final Stat stat;
+        private final Iterator<Stat> rest;
+    }
+}
\ No newline at end of file
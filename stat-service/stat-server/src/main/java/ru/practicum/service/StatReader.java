@@ -0,0 +1,158 @@
+package ru.practicum.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.ingest.HitBuffer;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+import ru.practicum.model.StatKey;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.StatSlice;
+import ru.practicum.model.TimelineStat;
+import ru.practicum.repository.HitStorage;
+import ru.practicum.rollup.Rollup;
+import ru.practicum.sketch.HyperLogLog;
+import ru.practicum.sketch.LatencyHistogram;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Статистика из хранилища с учётом hit'ов, ещё не записанных из {@link HitBuffer}, без сброса буфера
+ * на каждый запрос. Счётчики hit'ов буфера просто прибавляются. Для уникальных посещений URI, у которых
+ * в буфере есть hit'ы, заново читаются множества IP (или скетчи) из хранилища, и к ним добавляются IP буфера.
+ */
+@Component
+@RequiredArgsConstructor
+public class StatReader {
+    private final HitStorage hitStorage;
+    private final HitBuffer hitBuffer;
+    private final StatFanOut statFanOut;
+
+    public List<Stat> findStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                StatPrecision precision) {
+        return hitBuffer.readWithPending(buffered -> {
+            List<Stat> stored = statFanOut.findStats(start, end, uris, unique, precision);
+            List<Hit> pending = select(buffered, start, end, uris);
+            if (pending.isEmpty()) {
+                return stored;
+            }
+            Map<StatKey, Long> hits = new LinkedHashMap<>();
+            if (unique) {
+                Set<String> affected = pending.stream().map(Hit::getUri).collect(Collectors.toSet());
+                stored.stream()
+                        .filter(stat -> !affected.contains(stat.getUri()))
+                        .forEach(stat -> hits.put(new StatKey(stat.getApp(), stat.getUri()), stat.getHits()));
+                visitors(start, end, true, pending, precision).toStats()
+                        .forEach(stat -> hits.put(new StatKey(stat.getApp(), stat.getUri()), stat.getHits()));
+            } else {
+                stored.forEach(stat -> hits.put(new StatKey(stat.getApp(), stat.getUri()), stat.getHits()));
+                pending.forEach(hit -> hits.merge(new StatKey(hit.getApp(), hit.getUri()), 1L, Long::sum));
+            }
+            return hits.entrySet().stream()
+                    .map(e -> new Stat(e.getKey().getApp(), e.getKey().getUri(), e.getValue()))
+                    .sorted(Comparator.comparing(Stat::getHits).reversed())
+                    .collect(Collectors.toList());
+        });
+    }
+
+    public List<TimelineStat> findTimeline(LocalDateTime start, LocalDateTime end, List<String> uris, Rollup bucket,
+                                           boolean unique) {
+        return hitBuffer.readWithPending(buffered -> {
+            List<TimelineStat> stored = hitStorage.findTimeline(start, end, uris, bucket, unique);
+            List<Hit> pending = select(buffered, start, end, uris);
+            if (pending.isEmpty()) {
+                return stored;
+            }
+            Map<LocalDateTime, List<Hit>> pendingByBucket = pending.stream()
+                    .collect(Collectors.groupingBy(hit -> bucket.floor(hit.getTimestamp())));
+            Map<LocalDateTime, Set<String>> affected = new HashMap<>();
+            pendingByBucket.forEach((from, hits) ->
+                    affected.put(from, hits.stream().map(Hit::getUri).collect(Collectors.toSet())));
+            Map<LocalDateTime, Map<StatKey, Long>> rows = new TreeMap<>();
+            for (TimelineStat stat : stored) {
+                // уникальные посещения интервала с hit'ами буфера пересчитываются ниже целиком по URI
+                if (!unique || !affected.getOrDefault(stat.getBucket(), Set.of()).contains(stat.getUri())) {
+                    rows.computeIfAbsent(stat.getBucket(), b -> new LinkedHashMap<>())
+                            .put(new StatKey(stat.getApp(), stat.getUri()), stat.getHits());
+                }
+            }
+            pendingByBucket.forEach((from, hits) -> {
+                Map<StatKey, Long> row = rows.computeIfAbsent(from, b -> new LinkedHashMap<>());
+                if (unique) {
+                    LocalDateTime next = from.plus(1, bucket.getUnit());
+                    boolean last = next.isAfter(end);
+                    visitors(from.isBefore(start) ? start : from, last ? end : next, last, hits, StatPrecision.EXACT)
+                            .toStats()
+                            .forEach(stat -> row.put(new StatKey(stat.getApp(), stat.getUri()), stat.getHits()));
+                } else {
+                    hits.forEach(hit -> row.merge(new StatKey(hit.getApp(), hit.getUri()), 1L, Long::sum));
+                }
+            });
+            List<TimelineStat> result = new ArrayList<>();
+            rows.forEach((from, row) -> row.entrySet().stream()
+                    .sorted(Map.Entry.<StatKey, Long>comparingByValue().reversed())
+                    .forEach(e -> result.add(new TimelineStat(from, e.getKey().getApp(), e.getKey().getUri(),
+                            e.getValue()))));
+            return result;
+        });
+    }
+
+    /**
+     * Время ответа хранится по часам, поэтому учитываются hit'ы буфера из часов от часа start до часа end.
+     */
+    public LatencyHistogram findLatency(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        LocalDateTime fromHour = Rollup.HOUR.floor(start);
+        LocalDateTime toHour = Rollup.HOUR.floor(end);
+        return hitBuffer.readWithPending(buffered -> {
+            LatencyHistogram histogram = hitStorage.findLatency(start, end, uris);
+            for (Hit hit : buffered) {
+                LocalDateTime hour = Rollup.HOUR.floor(hit.getTimestamp());
+                if (hit.getResponseTimeMs() != null && !hour.isBefore(fromHour) && !hour.isAfter(toHour)
+                        && (uris == null || uris.contains(hit.getUri()))) {
+                    histogram.record(hit.getResponseTimeMs());
+                }
+            }
+            return histogram;
+        });
+    }
+
+    /**
+     * Множества IP (или скетчи) из хранилища для URI hit'ов буфера вместе с IP этих hit'ов.
+     */
+    private StatSlice visitors(LocalDateTime start, LocalDateTime end, boolean endInclusive, List<Hit> pending,
+                               StatPrecision precision) {
+        List<String> uris = pending.stream().map(Hit::getUri).distinct().collect(Collectors.toList());
+        StatSlice slice = hitStorage.findSlice(start, end, endInclusive, uris, true, precision);
+        Map<StatKey, HyperLogLog> sketches = new HashMap<>();
+        for (Hit hit : pending) {
+            StatKey key = new StatKey(hit.getApp(), hit.getUri());
+            if (precision == StatPrecision.APPROX) {
+                sketches.computeIfAbsent(key, k -> new HyperLogLog()).addHash(hitStorage.hashIp(hit.getIp()));
+            } else {
+                ByteBuffer ip = ByteBuffer.wrap(IpMapper.toBytes(hit.getIp()));
+                slice.addVisitor(key, ip.getLong(), ip.getLong());
+            }
+        }
+        sketches.forEach(slice::addSketch);
+        return slice;
+    }
+
+    private static List<Hit> select(List<Hit> buffered, LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Set<String> uriSet = uris == null ? null : Set.copyOf(uris);
+        return buffered.stream()
+                .filter(hit -> !hit.getTimestamp().isBefore(start) && !hit.getTimestamp().isAfter(end))
+                .filter(hit -> uriSet == null || uriSet.contains(hit.getUri()))
+                .collect(Collectors.toList());
+    }
+}
\ No newline at end of file
@@ -1,7 +1,14 @@
 package ru.practicum.service;
 
 import ru.practicum.dto.HitDto;
+import ru.practicum.dto.LatencyDto;
 import ru.practicum.dto.StatDto;
+import ru.practicum.dto.TimelineDto;
+import ru.practicum.model.Hit;
+import ru.practicum.model.StatGrouping;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.TopWindow;
+import ru.practicum.rollup.Rollup;
 
 import java.time.LocalDateTime;
 import java.util.List;
@@ -9,5 +16,38 @@ import java.util.List;
 public interface StatService {
     void addHit(HitDto hitDto);
 
-    List<StatDto> getStats(LocalDateTime start, LocalDateTime end, String[] uris, boolean unique);
+    void addHits(List<HitDto> hitDtos);
+
+    /**
+     * Принимает hit'ы, уже разобранные бинарным протоколом.
+     *
+     * @return количество принятых hit'ов
+     */
+    int addParsedHits(List<Hit> hits);
+
+    List<StatDto> getStats(LocalDateTime start, LocalDateTime end, String[] uris, boolean unique,
+                           StatPrecision precision, StatGrouping grouping);
+
+    /**
+     * В отличие от getStats, выгрузка из хранилища не учитывает hit'ы, ещё не записанные из буфера:
+     * они попадают в неё после очередного сброса буфера, не позже flush-interval.
+     */
+    StatStream streamStats(LocalDateTime start, LocalDateTime end, String[] uris, boolean unique,
+                           StatPrecision precision, StatGrouping grouping);
+
+    /**
+     * Статистика по длинному списку URI из тела POST /stats/query, части списка считаются параллельно.
+     * Как и streamStats, не учитывает hit'ы, ещё не записанные из буфера.
+     */
+    StatStream queryStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                          StatPrecision precision);
+
+    List<StatDto> getTop(int n, TopWindow window);
+
+    List<StatDto> getRealtime(String[] uris, String window);
+
+    List<TimelineDto> getTimeline(LocalDateTime start, LocalDateTime end, String[] uris, Rollup bucket,
+                                  boolean unique);
+
+    LatencyDto getLatency(LocalDateTime start, LocalDateTime end, String uri);
 }
\ No newline at end of file
@@ -3,17 +3,43 @@ package ru.practicum.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
+import ru.practicum.cache.StatQueryCache;
+import ru.practicum.counter.HitCounters;
+import ru.practicum.counter.RealtimeCounters;
+import ru.practicum.counter.TopHits;
+import ru.practicum.dictionary.UriTrie;
 import ru.practicum.dto.HitDto;
+import ru.practicum.dto.LatencyDto;
 import ru.practicum.dto.StatDto;
+import ru.practicum.dto.TimelineDto;
 import ru.practicum.exceptions.ValidationRequestException;
+import ru.practicum.ingest.HitBuffer;
+import ru.practicum.ingest.HitDeduplicator;
+import ru.practicum.mapper.HitMapper;
+import ru.practicum.mapper.LatencyMapper;
 import ru.practicum.mapper.StatMapper;
+import ru.practicum.mapper.TimelineMapper;
+import ru.practicum.model.Hit;
 import ru.practicum.model.Stat;
-import ru.practicum.repository.StatRepository;
+import ru.practicum.model.StatGrouping;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.TopWindow;
+import ru.practicum.repository.HitStorage;
+import ru.practicum.rollup.Rollup;
+import ru.practicum.snapshot.StatSnapshot;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import static ru.practicum.mapper.HitMapper.toHit;
@@ -22,46 +48,96 @@ import static ru.practicum.mapper.HitMapper.toHit;
 @RequiredArgsConstructor
 @Slf4j
 public class StatServiceImpl implements StatService {
-    private final StatRepository statRepository;
+    private static final long MAX_TIMELINE_BUCKETS = 100_000;
+    private static final Pattern WINDOW = Pattern.compile("(\\d{1,9})([smh])");
+
+    private final HitStorage hitStorage;
+    private final HitBuffer hitBuffer;
+    private final HitDeduplicator hitDeduplicator;
+    private final HitCounters hitCounters;
+    private final TopHits topHits;
+    private final RealtimeCounters realtimeCounters;
+    private final UriTrie uriTrie;
+    private final StatQueryCache statQueryCache;
+    private final StatFanOut statFanOut;
+    private final StatReader statReader;
+    private final StatSnapshot statSnapshot;
 
     @Override
     public void addHit(HitDto hitDto) {
         log.debug("Сохраняем hit: {}", hitDto);
-        statRepository.save(toHit(hitDto));
+        Hit hit = toHit(hitDto);
+        statSnapshot.recording(() -> {
+            if (!hitDeduplicator.tryRecord(hit)) {
+                return;
+            }
+            boolean added = false;
+            try {
+                added = hitBuffer.add(hit);
+            } finally {
+                hitDeduplicator.complete(hit, added);
+            }
+            if (!added) {
+                return;
+            }
+            hitCounters.record(hit);
+            topHits.record(hit);
+            realtimeCounters.record(hit);
+            uriTrie.add(hit.getUri());
+            statQueryCache.onHit(hit);
+        });
     }
 
     @Override
-    public List<StatDto> getStats(LocalDateTime start, LocalDateTime end, String[] uris, boolean unique) {
-        log.info("Получение статистики с параметрами: start={}, end={}, uris={}, unique={}",
-                start, end, uris != null ? Arrays.toString(uris) : "null", unique);
+    public void addHits(List<HitDto> hitDtos) {
+        log.debug("Сохраняем пакет из {} hit'ов", hitDtos.size());
+        addParsedHits(hitDtos.stream().map(HitMapper::toHit).collect(Collectors.toList()));
+    }
 
-        List<Stat> stats;
+    @Override
+    public int addParsedHits(List<Hit> mapped) {
+        int[] accepted = new int[1];
+        statSnapshot.recording(() -> {
+            List<Hit> candidates = hitDeduplicator.tryRecord(mapped);
+            List<Hit> hits = List.of();
+            try {
+                hits = hitBuffer.addAll(candidates);
+            } finally {
+                hitDeduplicator.complete(candidates, hits.size());
+            }
+            hits.forEach(hitCounters::record);
+            hits.forEach(topHits::record);
+            hits.forEach(realtimeCounters::record);
+            hits.forEach(hit -> uriTrie.add(hit.getUri()));
+            hits.forEach(statQueryCache::onHit);
+            accepted[0] = hits.size();
+        });
+        return accepted[0];
+    }
 
-        if (start.isAfter(end)) {
-            log.error("Ошибка валидации: start ({}) после end ({})", start, end);
-            throw new ValidationRequestException("Параметр 'start' не может быть позже параметра 'end'.");
-        }
+    @Override
+    public List<StatDto> getStats(LocalDateTime start, LocalDateTime end, String[] uris, boolean unique,
+                                  StatPrecision precision, StatGrouping grouping) {
+        log.info("Получение статистики с параметрами: start={}, end={}, uris={}, unique={}, precision={}, group={}",
+                start, end, uris != null ? Arrays.toString(uris) : "null", unique, precision, grouping);
+
+        validateRange(start, end);
+        validateGrouping(uris, unique, grouping);
+        List<String> uriList = toUriList(uris);
 
         try {
-            if (uris == null || uris.length == 0) {
-                log.debug("Запрос статистики без указания URIs, unique={}", unique);
-                stats = unique
-                        ? statRepository.findAllStatsUnique(start, end)
-                        : statRepository.findAllStats(start, end);
+            List<StatDto> result;
+            List<Stat> counted = countedStats(start, end, uriList, unique, precision);
+            if (counted != null) {
+                log.debug("Диапазон покрывает всю историю, статистика из счётчиков для URIs: {}", uriList);
+                result = toStatDtos(counted, uris, grouping);
             } else {
-                List<String> uriList = List.of(uris);
-                log.debug("Запрос статистики для URIs: {}, unique={}", uriList, unique);
-                stats = unique
-                        ? statRepository.findStatsByUrisUnique(uriList, start, end)
-                        : statRepository.findStatsByUris(uriList, start, end);
+                // hit'ы добавляются в буфер раньше, чем проверяются кэшем, поэтому загрузка с hit'ами буфера
+                // либо увидит опоздавший hit, либо hit сбросит зарезервированную запись
+                result = statQueryCache.getOrLoad(start, end, uris, unique, precision, grouping, () ->
+                        toStatDtos(statReader.findStats(start, end, uriList, unique, precision), uris, grouping));
             }
 
-            log.debug("Найдено {} записей статистики", stats.size());
-
-            List<StatDto> result = stats.isEmpty()
-                    ? Collections.emptyList()
-                    : stats.stream().map(StatMapper::toStatDto).collect(Collectors.toList());
-
             log.info("Успешно возвращено {} элементов статистики", result.size());
             return result;
         } catch (Exception e) {
@@ -69,4 +145,180 @@ public class StatServiceImpl implements StatService {
             throw e;
         }
     }
+
+    @Override
+    public StatStream streamStats(LocalDateTime start, LocalDateTime end, String[] uris, boolean unique,
+                                  StatPrecision precision, StatGrouping grouping) {
+        log.info("Потоковая выгрузка статистики с параметрами: start={}, end={}, uris={}, unique={}, precision={}, " +
+                "group={}", start, end, uris != null ? Arrays.toString(uris) : "null", unique, precision, grouping);
+        validateRange(start, end);
+        validateGrouping(uris, unique, grouping);
+        if (grouping == StatGrouping.PREFIX) {
+            return consumer -> getStats(start, end, uris, unique, precision, grouping).forEach(consumer);
+        }
+        List<String> uriList = toUriList(uris);
+        return consumer -> {
+            List<Stat> counted = countedStats(start, end, uriList, unique, precision);
+            if (counted != null) {
+                counted.forEach(stat -> consumer.accept(StatMapper.toStatDto(stat)));
+            } else {
+                hitStorage.streamStats(start, end, uriList, unique, precision,
+                        stat -> consumer.accept(StatMapper.toStatDto(stat)));
+            }
+        };
+    }
+
+    @Override
+    public StatStream queryStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                 StatPrecision precision) {
+        log.info("Статистика по списку URI: start={}, end={}, uris={}, unique={}, precision={}",
+                start, end, uris != null ? uris.size() : "null", unique, precision);
+        validateRange(start, end);
+        // части списка не должны пересекаться, поэтому повторы и URI, попавшие под несколько шаблонов, убираются
+        List<String> uriList = uris == null || uris.isEmpty()
+                ? null
+                : List.copyOf(new LinkedHashSet<>(uriTrie.resolve(uris)));
+        return consumer -> {
+            List<Stat> counted = countedStats(start, end, uriList, unique, precision);
+            if (counted != null) {
+                counted.forEach(stat -> consumer.accept(StatMapper.toStatDto(stat)));
+            } else if (uriList == null) {
+                hitStorage.streamStats(start, end, null, unique, precision,
+                        stat -> consumer.accept(StatMapper.toStatDto(stat)));
+            } else {
+                statFanOut.streamStatsByUris(start, end, uriList, unique, precision,
+                        stat -> consumer.accept(StatMapper.toStatDto(stat)));
+            }
+        };
+    }
+
+    @Override
+    public List<StatDto> getTop(int n, TopWindow window) {
+        log.info("Получение топа URI: n={}, window={}", n, window.getValue());
+        if (n < 1 || n > topHits.getCapacity()) {
+            throw new ValidationRequestException("Параметр 'n' должен быть от 1 до " + topHits.getCapacity() + ".");
+        }
+        return topHits.getTop(n, window).stream().map(StatMapper::toStatDto).collect(Collectors.toList());
+    }
+
+    @Override
+    public List<StatDto> getRealtime(String[] uris, String window) {
+        log.info("Получение hit'ов в реальном времени: uris={}, window={}",
+                uris != null ? Arrays.toString(uris) : "null", window);
+        int windowSeconds = parseWindow(window);
+        List<String> uriList = uris == null || uris.length == 0 ? null : List.of(uris);
+        return realtimeCounters.getStats(uriList, windowSeconds).stream()
+                .map(StatMapper::toStatDto)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<TimelineDto> getTimeline(LocalDateTime start, LocalDateTime end, String[] uris, Rollup bucket,
+                                         boolean unique) {
+        log.info("Получение временного ряда: start={}, end={}, uris={}, bucket={}, unique={}",
+                start, end, uris != null ? Arrays.toString(uris) : "null", bucket.getValue(), unique);
+        validateRange(start, end);
+        long buckets = Duration.between(bucket.floor(start), end).getSeconds() / bucket.getSeconds() + 1;
+        if (buckets > MAX_TIMELINE_BUCKETS) {
+            throw new ValidationRequestException("Слишком много интервалов (" + buckets + "), увеличьте 'bucket' " +
+                    "или сократите диапазон.");
+        }
+        List<String> uriList = toUriList(uris);
+        return statReader.findTimeline(start, end, uriList, bucket, unique).stream()
+                .map(TimelineMapper::toTimelineDto)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public LatencyDto getLatency(LocalDateTime start, LocalDateTime end, String uri) {
+        log.info("Получение перцентилей времени ответа: start={}, end={}, uri={}", start, end, uri);
+        validateRange(start, end);
+        List<String> uriList = toUriList(new String[]{uri});
+        return LatencyMapper.toLatencyDto(uri, statReader.findLatency(start, end, uriList));
+    }
+
+    private static List<StatDto> toStatDtos(List<Stat> stats, String[] uris, StatGrouping grouping) {
+        if (grouping == StatGrouping.PREFIX) {
+            stats = sumByPattern(stats, uris);
+        }
+        log.debug("Найдено {} записей статистики", stats.size());
+        return stats.isEmpty()
+                ? Collections.emptyList()
+                : stats.stream().map(StatMapper::toStatDto).collect(Collectors.toList());
+    }
+
+    /**
+     * @return статистика из счётчиков, если диапазон покрывает всю историю и счётчики могут её посчитать, иначе null
+     */
+    private List<Stat> countedStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                    StatPrecision precision) {
+        return hitCounters.coversAllHistory(start, end) ? hitCounters.getStats(uris, unique, precision) : null;
+    }
+
+    private void validateRange(LocalDateTime start, LocalDateTime end) {
+        if (start.isAfter(end)) {
+            log.error("Ошибка валидации: start ({}) после end ({})", start, end);
+            throw new ValidationRequestException("Параметр 'start' не может быть позже параметра 'end'.");
+        }
+    }
+
+    /**
+     * Разбирает окно вида 30s, 5m или 1h в секунды.
+     */
+    private int parseWindow(String window) {
+        Matcher matcher = WINDOW.matcher(window);
+        if (!matcher.matches()) {
+            throw new ValidationRequestException("Окно задаётся как число с единицей s, m или h: " + window);
+        }
+        long seconds = Long.parseLong(matcher.group(1)) * switch (matcher.group(2)) {
+            case "h" -> 3600;
+            case "m" -> 60;
+            default -> 1;
+        };
+        if (seconds < 1 || seconds > realtimeCounters.getMaxWindowSeconds()) {
+            throw new ValidationRequestException("Окно должно быть от 1 до " + realtimeCounters.getMaxWindowSeconds() +
+                    " секунд: " + window);
+        }
+        return (int) seconds;
+    }
+
+    private void validateGrouping(String[] uris, boolean unique, StatGrouping grouping) {
+        if (grouping != StatGrouping.PREFIX) {
+            return;
+        }
+        if (uris == null || uris.length == 0) {
+            throw new ValidationRequestException("Для group=prefix нужно указать параметр 'uris'.");
+        }
+        if (unique) {
+            throw new ValidationRequestException("Суммы по префиксам считаются только для unique=false: " +
+                    "уникальные посещения разных URI нельзя складывать.");
+        }
+    }
+
+    /**
+     * Раскрывает шаблоны вида /events/* в известные URI. Пустой список означает, что ни один URI не подошёл.
+     */
+    private List<String> toUriList(String[] uris) {
+        return uris == null || uris.length == 0 ? null : uriTrie.resolve(List.of(uris));
+    }
+
+    /**
+     * Складывает hits по каждому запрошенному URI или шаблону отдельно для каждого приложения.
+     */
+    private static List<Stat> sumByPattern(List<Stat> stats, String[] uris) {
+        List<Stat> result = new ArrayList<>();
+        for (String pattern : new LinkedHashSet<>(List.of(uris))) {
+            boolean isPattern = UriTrie.isPattern(pattern);
+            String prefix = isPattern ? UriTrie.prefixOf(pattern) : pattern;
+            Map<String, Long> totals = new LinkedHashMap<>();
+            for (Stat stat : stats) {
+                if (isPattern ? stat.getUri().startsWith(prefix) : stat.getUri().equals(prefix)) {
+                    totals.merge(stat.getApp(), stat.getHits(), Long::sum);
+                }
+            }
+            totals.forEach((app, hits) -> result.add(new Stat(app, pattern, hits)));
+        }
+        result.sort(Comparator.comparing(Stat::getHits).reversed());
+        return result;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,13 @@
+package ru.practicum.service;
+
+import ru.practicum.dto.StatDto;
+
+import java.util.function.Consumer;
+
+/**
+ * Отложенный запрос статистики: строки выдаются потребителю по мере чтения, без промежуточного списка.
+ */
+@FunctionalInterface
+public interface StatStream {
+    void forEach(Consumer<StatDto> consumer);
+}
\ No newline at end of file
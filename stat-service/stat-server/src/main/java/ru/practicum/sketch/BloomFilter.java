@@ -0,0 +1,55 @@
+package ru.practicum.sketch;
+
+import java.util.Arrays;
+
+/**
+ * Фильтр Блума над 64-битными хешами. Размер и число хеш-функций подбираются по ожидаемому числу элементов
+ * и допустимой доле ложных срабатываний, позиции битов получаются двойным хешированием (Kirsch, Mitzenmacher).
+ * Ложноотрицательных ответов не бывает. Не потокобезопасен.
+ */
+public class BloomFilter {
+    private final long[] words;
+    private final long bits;
+    private final int hashes;
+
+    public BloomFilter(long expectedItems, double falsePositiveRate) {
+        if (expectedItems < 1) {
+            throw new IllegalArgumentException("Ожидаемое число элементов должно быть положительным: " + expectedItems);
+        }
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Доля ложных срабатываний должна быть в (0, 1): " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-expectedItems * Math.log(falsePositiveRate) / (ln2 * ln2));
+        this.words = new long[(int) Math.max(1, (optimalBits + 63) / 64)];
+        this.bits = words.length * 64L;
+        this.hashes = (int) Math.max(1, Math.round((double) bits / expectedItems * ln2));
+    }
+
+    public boolean mightContain(long hash) {
+        long h2 = secondHash(hash);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((hash + i * h2) & Long.MAX_VALUE) % bits;
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void put(long hash) {
+        long h2 = secondHash(hash);
+        for (int i = 0; i < hashes; i++) {
+            long bit = ((hash + i * h2) & Long.MAX_VALUE) % bits;
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0L);
+    }
+
+    private static long secondHash(long hash) {
+        return Long.rotateLeft(hash * 0x9e3779b97f4a7c15L, 32) | 1;
+    }
+}
\ No newline at end of file
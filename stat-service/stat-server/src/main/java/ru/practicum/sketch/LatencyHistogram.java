@@ -0,0 +1,147 @@
+package ru.practicum.sketch;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Гистограмма времени ответа в стиле HdrHistogram: значения до 2^SUB_BUCKET_BITS хранятся точно, дальше каждый
+ * интервал [2^k, 2^(k+1)) делится на 2^(SUB_BUCKET_BITS - 1) равных корзин, поэтому относительная ошибка
+ * перцентиля не больше 1/64. Максимум хранится точно. В байты записываются только непустые корзины.
+ * Не потокобезопасна.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final byte VERSION = 1;
+
+    private long[] counts = new long[SUB_BUCKETS];
+    private long total;
+    private long max;
+
+    public void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Время ответа не может быть отрицательным: " + value);
+        }
+        add(index(value), 1);
+        max = Math.max(max, value);
+    }
+
+    public LatencyHistogram merge(LatencyHistogram other) {
+        for (int i = 0; i < other.counts.length; i++) {
+            if (other.counts[i] != 0) {
+                add(i, other.counts[i]);
+            }
+        }
+        max = Math.max(max, other.max);
+        return this;
+    }
+
+    public long getCount() {
+        return total;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param quantile доля в (0, 1]
+     * @return наибольшее значение корзины, в которую попадает перцентиль, но не больше максимума
+     */
+    public long percentile(double quantile) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Формат: версия, max, число непустых корзин и пары (приращение индекса, счётчик); все числа — varint.
+     */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(VERSION);
+        writeVarLong(out, max);
+        int buckets = (int) Arrays.stream(counts).filter(count -> count != 0).count();
+        writeVarLong(out, buckets);
+        int previous = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] != 0) {
+                writeVarLong(out, i - previous);
+                writeVarLong(out, counts[i]);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static LatencyHistogram fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (in.get() != VERSION) {
+            throw new IllegalArgumentException("Неизвестная версия гистограммы: " + bytes[0]);
+        }
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.max = readVarLong(in);
+        long buckets = readVarLong(in);
+        int index = 0;
+        for (long i = 0; i < buckets; i++) {
+            index += (int) readVarLong(in);
+            histogram.add(index, readVarLong(in));
+        }
+        return histogram;
+    }
+
+    private void add(int index, long count) {
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length * 2));
+        }
+        counts[index] += count;
+        total += count;
+    }
+
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return shift * HALF + (int) (value >>> shift);
+    }
+
+    private static long highestValue(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF - 1;
+        long subBucket = index - (long) shift * HALF;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,69 @@
+package ru.practicum.sketch;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Алгоритм Space-Saving (Metwally и др.): хранит не больше capacity самых частых элементов потока.
+ * Вытесняемый элемент с минимальным счётчиком уступает место новому, и тот наследует его счётчик,
+ * поэтому частота может быть завышена не больше чем на минимальный счётчик сводки.
+ * Не потокобезопасен.
+ */
+public class SpaceSaving<T> {
+    private static final Comparator<Counter<?>> BY_COUNT =
+            Comparator.<Counter<?>>comparingLong(counter -> counter.count).thenComparingLong(counter -> counter.seq);
+
+    private final int capacity;
+    private final Map<T, Counter<T>> counters = new HashMap<>();
+    private final TreeSet<Counter<T>> order = new TreeSet<>(BY_COUNT);
+    private long seq;
+
+    public SpaceSaving(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Ёмкость Space-Saving должна быть положительной: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    public void add(T item, long weight) {
+        Counter<T> counter = counters.get(item);
+        if (counter != null) {
+            order.remove(counter);
+            counter.count += weight;
+            order.add(counter);
+            return;
+        }
+        long count = weight;
+        if (counters.size() >= capacity) {
+            Counter<T> min = order.pollFirst();
+            counters.remove(min.item);
+            count += min.count;
+        }
+        counter = new Counter<>(item, count, seq++);
+        counters.put(item, counter);
+        order.add(counter);
+    }
+
+    public void forEach(ObjLongConsumer<T> consumer) {
+        counters.values().forEach(counter -> consumer.accept(counter.item, counter.count));
+    }
+
+    public int size() {
+        return counters.size();
+    }
+
+    private static final class Counter<T> {
+        private final T item;
+        private final long seq;
+        private long count;
+
+        private Counter(T item, long count, long seq) {
+            this.item = item;
+            this.count = count;
+            this.seq = seq;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,12 @@
+package ru.practicum.snapshot;
+
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Копия части состояния, снятая при остановленном приёме hit'ов и записываемая в снимок после его возобновления.
+ */
+@FunctionalInterface
+public interface SnapshotSection {
+    void save(DataOutput out) throws IOException;
+}
\ No newline at end of file
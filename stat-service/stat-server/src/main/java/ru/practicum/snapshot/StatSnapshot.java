@@ -0,0 +1,271 @@
+package ru.practicum.snapshot;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.practicum.counter.HitCounters;
+import ru.practicum.counter.TopHits;
+import ru.practicum.dictionary.UriTrie;
+import ru.practicum.ingest.HitBuffer;
+import ru.practicum.repository.HitStorage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Снимок состояния в памяти (счётчики за всю историю, топы URI, префиксное дерево) на локальном диске.
+ * Вместе с состоянием записывается отметка последнего hit'а в хранилище, поэтому при старте из хранилища
+ * дочитываются только hit'ы после отметки, а не вся таблица. Без снимка, при несовпадении контрольной суммы
+ * или если хранилище старше снимка, состояние строится полным чтением хранилища.
+ * <p>
+ * Чтобы состояние в снимке соответствовало отметке, приём hit'ов останавливается только на время копирования
+ * счётчиков и топов, а буфер перестаёт записывать hit'ы, принятые после копирования. Затем буфер записывает
+ * hit'ы, принятые до него, отметкой становится последний hit хранилища, и копия сериализуется без остановки
+ * приёма.
+ * Дерево URI записывается без копирования: лишний URI в нём безвреден, а пропущенный добавит дочитывание.
+ * <p>
+ * Формат: magic, версия, тип хранилища, время записи, отметка, секции счётчиков, топов и дерева URI,
+ * в конце CRC32C всего предыдущего содержимого.
+ */
+@Slf4j
+@Component
+public class StatSnapshot {
+    private static final int MAGIC = 0x45574d50;
+    private static final int VERSION = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final HitStorage hitStorage;
+    private final HitBuffer hitBuffer;
+    private final HitCounters hitCounters;
+    private final TopHits topHits;
+    private final UriTrie uriTrie;
+    private final String storage;
+    private final boolean enabled;
+    private final Path path;
+    private final ReadWriteLock ingestLock = new ReentrantReadWriteLock();
+
+    public StatSnapshot(HitStorage hitStorage,
+                        HitBuffer hitBuffer,
+                        HitCounters hitCounters,
+                        TopHits topHits,
+                        UriTrie uriTrie,
+                        @Value("${stat-server.storage:jdbc}") String storage,
+                        @Value("${stat-server.snapshot.enabled:true}") boolean enabled,
+                        @Value("${stat-server.snapshot.path:data/stat-snapshot.bin}") String path) {
+        this.hitStorage = hitStorage;
+        this.hitBuffer = hitBuffer;
+        this.hitCounters = hitCounters;
+        this.topHits = topHits;
+        this.uriTrie = uriTrie;
+        this.storage = storage;
+        this.enabled = enabled;
+        this.path = Path.of(path);
+    }
+
+    @PostConstruct
+    public void load() {
+        long started = System.nanoTime();
+        Long lastHitId = enabled ? restore() : null;
+        if (lastHitId == null) {
+            hitCounters.load();
+            topHits.load();
+            uriTrie.load();
+            log.info("Состояние загружено из хранилища за {} мс", elapsedMillis(started));
+            return;
+        }
+        long[] replayed = new long[1];
+        hitStorage.forEachHitAfter(lastHitId, hit -> {
+            hitCounters.record(hit);
+            topHits.record(hit);
+            uriTrie.add(hit.getUri());
+            replayed[0]++;
+        });
+        log.info("Состояние загружено из снимка и {} hit'ов после отметки {} за {} мс",
+                replayed[0], lastHitId, elapsedMillis(started));
+    }
+
+    /**
+     * Выполняет приём hit'ов: добавление в буфер и обновление состояния в памяти. Пока пишется снимок, приём ждёт.
+     */
+    public void recording(Runnable ingest) {
+        ingestLock.readLock().lock();
+        try {
+            ingest.run();
+        } finally {
+            ingestLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Выполняет действие при остановленном приёме hit'ов.
+     */
+    public void paused(Runnable action) {
+        ingestLock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            ingestLock.writeLock().unlock();
+        }
+    }
+
+    @Scheduled(initialDelayString = "${stat-server.snapshot.interval-ms:300000}",
+            fixedDelayString = "${stat-server.snapshot.interval-ms:300000}")
+    public void saveScheduled() {
+        if (enabled) {
+            save();
+        }
+    }
+
+    @PreDestroy
+    public void saveOnShutdown() {
+        if (enabled) {
+            save();
+        }
+    }
+
+    /**
+     * Выполняет изменение состояния, которое нельзя воспроизвести дочитыванием hit'ов после отметки
+     * (удаление hit'ов по сроку хранения, перенос поздних hit'ов в архив): старый снимок удаляется
+     * до изменения, новый пишется после.
+     */
+    public synchronized void rewrite(Runnable change) {
+        if (enabled) {
+            try {
+                Files.deleteIfExists(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Не удалось удалить снимок " + path, e);
+            }
+        }
+        change.run();
+        if (enabled) {
+            save();
+        }
+    }
+
+    public synchronized void save() {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            SnapshotSection counters;
+            SnapshotSection top;
+            ingestLock.writeLock().lock();
+            long started = System.nanoTime();
+            try {
+                counters = hitCounters.copy();
+                top = topHits.copy();
+                hitBuffer.holdFlushes();
+            } finally {
+                ingestLock.writeLock().unlock();
+            }
+            long paused = elapsedMillis(started);
+            long lastHitId = hitBuffer.flushHeld(hitStorage::findLastHitId);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                CheckedOutputStream checked = new CheckedOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE), new CRC32C());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(storage);
+                out.writeLong(Instant.now().toEpochMilli());
+                out.writeLong(lastHitId);
+                counters.save(out);
+                top.save(out);
+                uriTrie.save(out);
+                out.writeLong(checked.getChecksum().getValue());
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Записан снимок {} с отметкой {}, приём hit'ов остановлен на {} мс", path, lastHitId, paused);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Не удалось записать снимок {}, остаётся предыдущий", path, e);
+        }
+    }
+
+    /**
+     * @return отметка снимка или null, если снимок нельзя использовать
+     */
+    private Long restore() {
+        if (!Files.exists(path)) {
+            log.info("Снимок {} не найден, состояние загружается из хранилища", path);
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE))) {
+            if (!checksumMatches()) {
+                log.warn("Контрольная сумма снимка {} не совпадает, состояние загружается из хранилища", path);
+                return null;
+            }
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !storage.equals(in.readUTF())) {
+                log.warn("Снимок {} другого формата или хранилища, состояние загружается из хранилища", path);
+                return null;
+            }
+            Instant createdAt = Instant.ofEpochMilli(in.readLong());
+            long lastHitId = in.readLong();
+            long storedLastHitId = hitStorage.findLastHitId();
+            if (lastHitId > storedLastHitId) {
+                log.warn("Снимок {} новее хранилища (отметка {}, в хранилище {}), состояние загружается из хранилища",
+                        path, lastHitId, storedLastHitId);
+                return null;
+            }
+            try {
+                hitCounters.restore(in);
+                topHits.restore(in);
+                uriTrie.restore(in);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Снимок " + path + " прочитан частично, удалите его и перезапустите сервер", e);
+            }
+            log.info("Загружен снимок {} от {} с отметкой {}", path, createdAt, lastHitId);
+            return lastHitId;
+        } catch (IOException e) {
+            log.warn("Не удалось прочитать снимок {}, состояние загружается из хранилища", path, e);
+            return null;
+        }
+    }
+
+    private boolean checksumMatches() throws IOException {
+        long remaining = Files.size(path) - Long.BYTES;
+        if (remaining < 0) {
+            return false;
+        }
+        CRC32C crc = new CRC32C();
+        try (InputStream in = Files.newInputStream(path)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (remaining > 0) {
+                int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                if (read < 0) {
+                    return false;
+                }
+                crc.update(buffer, 0, read);
+                remaining -= read;
+            }
+            return new DataInputStream(in).readLong() == crc.getValue();
+        }
+    }
+
+    private static long elapsedMillis(long startedNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedNanos);
+    }
+}
\ No newline at end of file
@@ -1,2 +0,0 @@
-DELETE FROM statistics;
-ALTER TABLE statistics ALTER COLUMN id RESTART WITH 1;
\ No newline at end of file
@@ -0,0 +1,8 @@
+DELETE FROM statistics;
+DELETE FROM statistics_minute;
+DELETE FROM statistics_hour;
+DELETE FROM statistics_day;
+DELETE FROM statistics_hll;
+DELETE FROM statistics_latency;
+DELETE FROM apps;
+DELETE FROM uris;
\ No newline at end of file
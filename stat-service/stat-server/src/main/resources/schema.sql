@@ -1,8 +1,69 @@
+CREATE TABLE IF NOT EXISTS apps (
+  id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+  name VARCHAR(255) NOT NULL,
+  CONSTRAINT pk_app PRIMARY KEY (id),
+  CONSTRAINT uq_app_name UNIQUE (name)
+);
+
+CREATE TABLE IF NOT EXISTS uris (
+  id INTEGER GENERATED BY DEFAULT AS IDENTITY NOT NULL,
+  name VARCHAR(255) NOT NULL,
+  CONSTRAINT pk_uri PRIMARY KEY (id),
+  CONSTRAINT uq_uri_name UNIQUE (name)
+);
+
+CREATE SEQUENCE IF NOT EXISTS statistics_id_seq;
+
 CREATE TABLE IF NOT EXISTS statistics (
-  id BIGINT GENERATED BY DEFAULT AS IDENTITY NOT NULL,
-  app VARCHAR(255) NOT NULL,
-  uri VARCHAR(255) NOT NULL,
-  ip VARCHAR(40) NOT NULL,
-  timestamp TIMESTAMP WITHOUT TIME ZONE,
-  CONSTRAINT pk_stat PRIMARY KEY (id)
+  id BIGINT DEFAULT nextval('statistics_id_seq') NOT NULL,
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  ip BYTEA NOT NULL,
+  timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  CONSTRAINT pk_stat PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS statistics_default PARTITION OF statistics DEFAULT;
+
+CREATE INDEX IF NOT EXISTS idx_statistics_timestamp ON statistics (timestamp);
+
+CREATE INDEX IF NOT EXISTS idx_statistics_uri_timestamp ON statistics (uri_id, timestamp);
+
+CREATE TABLE IF NOT EXISTS statistics_minute (
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  hits BIGINT NOT NULL,
+  CONSTRAINT pk_stat_minute PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS statistics_hour (
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  hits BIGINT NOT NULL,
+  CONSTRAINT pk_stat_hour PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS statistics_day (
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  hits BIGINT NOT NULL,
+  CONSTRAINT pk_stat_day PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS statistics_hll (
+  day DATE NOT NULL,
+  app_id INTEGER NOT NULL,
+  uri_id INTEGER NOT NULL,
+  sketch BYTEA NOT NULL,
+  CONSTRAINT pk_stat_hll PRIMARY KEY (day, app_id, uri_id)
+);
+
+CREATE TABLE IF NOT EXISTS statistics_latency (
+  bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+  uri_id INTEGER NOT NULL,
+  histogram BYTEA NOT NULL,
+  CONSTRAINT pk_stat_latency PRIMARY KEY (bucket, uri_id)
 );
\ No newline at end of file
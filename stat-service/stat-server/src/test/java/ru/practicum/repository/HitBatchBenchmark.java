@@ -0,0 +1,159 @@
+package ru.practicum.repository;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import ru.practicum.mapper.IpMapper;
+import ru.practicum.model.Hit;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+/**
+ * Сравнение скорости записи hit'ов в statistics: по одному INSERT на hit в своей транзакции (как делал
+ * statRepository.save с IDENTITY), пакетный INSERT через JDBC batch и бинарный COPY из {@link HitBatchRepository}.
+ * Пакеты — по batch-size буфера, каждый в своей транзакции. Таблицы создаются в отдельной схеме stat_benchmark.
+ * <p>
+ * Не входит в обычный прогон тестов, запуск:
+ * <pre>
+ * mvn -pl stat-service/stat-server -am test -Dtest=HitBatchBenchmark -Dsurefire.failIfNoSpecifiedTests=false \
+ *     -Dbenchmark.url=jdbc:postgresql://localhost:5432/postgres -Dbenchmark.sizes=10000,100000,1000000
+ * </pre>
+ */
+@Slf4j
+class HitBatchBenchmark {
+    private static final String SCHEMA = "stat_benchmark";
+    private static final String INSERT_HIT = "INSERT INTO statistics (app_id, uri_id, ip, timestamp) VALUES (?, ?, ?, ?)";
+    private static final int BATCH_SIZE = 500;
+    private static final int URIS = 1000;
+
+    private static SingleConnectionDataSource dataSource;
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeAll
+    static void createSchema() throws SQLException {
+        Properties properties = new Properties();
+        properties.setProperty("user", System.getProperty("benchmark.username", "root"));
+        properties.setProperty("password", System.getProperty("benchmark.password", "root"));
+        properties.setProperty("reWriteBatchedInserts", "true");
+        dataSource = new SingleConnectionDataSource(System.getProperty("benchmark.url",
+                "jdbc:postgresql://localhost:5432/postgres"), true);
+        dataSource.setConnectionProperties(properties);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("DROP SCHEMA IF EXISTS " + SCHEMA + " CASCADE");
+        jdbcTemplate.execute("CREATE SCHEMA " + SCHEMA);
+        jdbcTemplate.execute("SET search_path TO " + SCHEMA);
+        ScriptUtils.executeSqlScript(dataSource.getConnection(), new ClassPathResource("schema.sql"));
+        jdbcTemplate.update("INSERT INTO apps (id, name) VALUES (1, 'ewm-main-service')");
+        jdbcTemplate.update("INSERT INTO uris (id, name) SELECT i, '/events/' || i FROM generate_series(1, ?) i", URIS);
+    }
+
+    @AfterAll
+    static void dropSchema() {
+        jdbcTemplate.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+        dataSource.destroy();
+    }
+
+    @Test
+    void compareWritePaths() throws SQLException {
+        HitBatchRepository hitBatchRepository = new HitBatchRepository(jdbcTemplate);
+        List<String> results = new ArrayList<>();
+        for (int size : Arrays.stream(System.getProperty("benchmark.sizes", "10000,100000,1000000").split(","))
+                .mapToInt(Integer::parseInt).toArray()) {
+            List<Hit> hits = generate(size);
+            results.add(run("save", hits, this::saveEach));
+            results.add(run("batch INSERT", hits, this::insertBatches));
+            results.add(run("COPY", hits, batch -> {
+                for (int from = 0; from < batch.size(); from += BATCH_SIZE) {
+                    hitBatchRepository.saveAll(batch.subList(from, Math.min(from + BATCH_SIZE, batch.size())));
+                }
+            }));
+        }
+        log.info("Запись hit'ов в statistics:\n{}", String.join("\n", results));
+    }
+
+    private String run(String name, List<Hit> hits, Writer writer) throws SQLException {
+        jdbcTemplate.execute("TRUNCATE statistics");
+        long started = System.nanoTime();
+        writer.write(hits);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        Long written = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM statistics", Long.class);
+        if (written == null || written != hits.size()) {
+            throw new IllegalStateException(name + ": записано " + written + " из " + hits.size());
+        }
+        return String.format("%9d hit'ов  %-12s %8.2f с  %,10.0f hit/с", hits.size(), name, seconds,
+                hits.size() / seconds);
+    }
+
+    // как save() сущности с IDENTITY: отдельный INSERT с возвратом id и отдельный commit на каждый hit
+    private void saveEach(List<Hit> hits) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_HIT, new String[]{"id"})) {
+            for (Hit hit : hits) {
+                bind(statement, hit);
+                statement.executeUpdate();
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    keys.next();
+                }
+            }
+        }
+    }
+
+    private void insertBatches(List<Hit> hits) throws SQLException {
+        Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        try (PreparedStatement statement = connection.prepareStatement(INSERT_HIT)) {
+            for (int from = 0; from < hits.size(); from += BATCH_SIZE) {
+                for (Hit hit : hits.subList(from, Math.min(from + BATCH_SIZE, hits.size()))) {
+                    bind(statement, hit);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+                connection.commit();
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void bind(PreparedStatement statement, Hit hit) throws SQLException {
+        statement.setInt(1, hit.getAppId());
+        statement.setInt(2, hit.getUriId());
+        statement.setBytes(3, IpMapper.toBytes(hit.getIp()));
+        statement.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+    }
+
+    private static List<Hit> generate(int size) {
+        Random random = new Random(size);
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 0, 0);
+        List<Hit> hits = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            hits.add(Hit.builder()
+                    .appId(1)
+                    .uriId(1 + random.nextInt(URIS))
+                    .ip("10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256))
+                    .timestamp(start.plusSeconds(random.nextInt(30 * 24 * 3600)))
+                    .build());
+        }
+        return hits;
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        void write(List<Hit> hits) throws SQLException;
+    }
+}
\ No newline at end of file
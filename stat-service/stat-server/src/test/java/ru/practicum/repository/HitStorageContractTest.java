@@ -0,0 +1,163 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.practicum.model.Hit;
+import ru.practicum.model.Stat;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.model.TimelineStat;
+import ru.practicum.rollup.Rollup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Общие требования к {@link HitStorage}: обе реализации должны отвечать одинаково. Каждый тест пишет hit'ы
+ * своего приложения и своих URI, поэтому реализации могут использовать общую БД.
+ */
+public abstract class HitStorageContractTest {
+    private static final LocalDateTime NOON = LocalDateTime.of(2024, 3, 1, 12, 0);
+
+    private String app;
+    private String uri1;
+    private String uri2;
+
+    protected abstract HitStorage storage();
+
+    @BeforeEach
+    void createNames() {
+        String id = UUID.randomUUID().toString();
+        app = "contract-" + id;
+        uri1 = "/contract/" + id + "/1";
+        uri2 = "/contract/" + id + "/2";
+    }
+
+    @Test
+    void findStatsCountsHitsAndUniqueIpsInRange() {
+        storage().saveAll(List.of(
+                hit(uri1, "10.0.0.1", NOON),
+                hit(uri1, "10.0.0.1", NOON.plusMinutes(1)),
+                hit(uri1, "10.0.0.2", NOON.plusMinutes(2)),
+                hit(uri2, "2001:db8::1", NOON.plusMinutes(3)),
+                hit(uri1, "10.0.0.3", NOON.plusHours(2))));
+
+        LocalDateTime end = NOON.plusHours(1);
+        assertEquals(Map.of(uri1, 3L, uri2, 1L), hitsByUri(storage().findStats(NOON, end, uris(), false,
+                StatPrecision.EXACT)));
+        assertEquals(Map.of(uri1, 2L, uri2, 1L), hitsByUri(storage().findStats(NOON, end, uris(), true,
+                StatPrecision.EXACT)));
+        assertEquals(Map.of(uri1, 2L, uri2, 1L), hitsByUri(storage().findStats(NOON, end, uris(), true,
+                StatPrecision.APPROX)));
+        assertEquals(Map.of(uri1, 2L), hitsByUri(storage().findStats(NOON.plusMinutes(1), NOON.plusMinutes(2),
+                List.of(uri1), false, StatPrecision.EXACT)));
+    }
+
+    @Test
+    void findSliceMatchesFindStats() {
+        storage().saveAll(List.of(
+                hit(uri1, "10.0.0.1", NOON),
+                hit(uri1, "10.0.0.1", NOON.plusMinutes(1)),
+                hit(uri2, "10.0.0.1", NOON.plusMinutes(2)),
+                hit(uri2, "10.0.0.2", NOON.plusDays(1))));
+
+        LocalDateTime end = NOON.plusDays(2);
+        for (boolean unique : new boolean[]{false, true}) {
+            assertEquals(hitsByUri(storage().findStats(NOON, end, uris(), unique, StatPrecision.EXACT)),
+                    hitsByUri(storage().findSlice(NOON, end, true, uris(), unique, StatPrecision.EXACT).toStats()));
+        }
+    }
+
+    @Test
+    void findSliceWithoutEndExcludesHitsAtEnd() {
+        LocalDateTime midnight = NOON.toLocalDate().plusDays(1).atStartOfDay();
+        storage().saveAll(List.of(
+                hit(uri1, "10.0.0.1", midnight.minusSeconds(1)),
+                hit(uri1, "10.0.0.2", midnight),
+                hit(uri1, "10.0.0.3", midnight.plusHours(1))));
+
+        for (boolean unique : new boolean[]{false, true}) {
+            for (StatPrecision precision : StatPrecision.values()) {
+                assertEquals(Map.of(uri1, 1L), hitsByUri(storage().findSlice(NOON, midnight, false, uris(), unique,
+                        precision).toStats()));
+                assertEquals(Map.of(uri1, 2L), hitsByUri(storage().findSlice(midnight, midnight.plusDays(1), true,
+                        uris(), unique, precision).toStats()));
+            }
+        }
+    }
+
+    @Test
+    void findTimelineGroupsHitsByBucket() {
+        storage().saveAll(List.of(
+                hit(uri1, "10.0.0.1", NOON.plusMinutes(5)),
+                hit(uri1, "10.0.0.1", NOON.plusMinutes(10)),
+                hit(uri1, "10.0.0.2", NOON.plusHours(1).plusMinutes(5))));
+
+        List<TimelineStat> hits = storage().findTimeline(NOON, NOON.plusHours(2), List.of(uri1), Rollup.HOUR, false);
+        List<TimelineStat> unique = storage().findTimeline(NOON, NOON.plusHours(2), List.of(uri1), Rollup.HOUR, true);
+
+        assertEquals(Map.of(NOON, 2L, NOON.plusHours(1), 1L), hitsByBucket(hits));
+        assertEquals(Map.of(NOON, 1L, NOON.plusHours(1), 1L), hitsByBucket(unique));
+    }
+
+    @Test
+    void failedBatchWritesNothing() {
+        List<Hit> failed = List.of(
+                hit(uri1, "10.0.0.1", NOON),
+                hit(uri1, "10.0.0.2", NOON),
+                hit(uri1, "not-an-ip", NOON));
+        assertThrows(RuntimeException.class, () -> storage().saveAll(failed));
+
+        storage().saveAll(List.of(hit(uri1, "10.0.0.3", NOON)));
+
+        assertEquals(Map.of(uri1, 1L), hitsByUri(storage().findStats(NOON, NOON, uris(), false,
+                StatPrecision.EXACT)));
+    }
+
+    @Test
+    void forEachHitAfterReturnsLaterHitsInSaveOrder() {
+        storage().saveAll(List.of(hit(uri1, "10.0.0.1", NOON)));
+        long lastHitId = storage().findLastHitId();
+        storage().saveAll(List.of(hit(uri2, "10.0.0.2", NOON.plusDays(1)), hit(uri1, "10.0.0.3", NOON.minusDays(1))));
+        storage().saveAll(List.of(hit(uri2, "10.0.0.4", NOON)));
+
+        List<String> later = new ArrayList<>();
+        storage().forEachHitAfter(lastHitId, hit -> later.add(hit.getApp() + " " + hit.getUri() + " " + hit.getIp() +
+                " " + hit.getTimestamp()));
+
+        assertEquals(List.of(
+                app + " " + uri2 + " 10.0.0.2 " + NOON.plusDays(1),
+                app + " " + uri1 + " 10.0.0.3 " + NOON.minusDays(1),
+                app + " " + uri2 + " 10.0.0.4 " + NOON), later);
+    }
+
+    private List<String> uris() {
+        return List.of(uri1, uri2);
+    }
+
+    private Hit hit(String uri, String ip, LocalDateTime timestamp) {
+        return Hit.builder()
+                .app(app)
+                .uri(uri)
+                .ip(ip)
+                .timestamp(timestamp)
+                .build();
+    }
+
+    private static Map<String, Long> hitsByUri(List<Stat> stats) {
+        return stats.stream().collect(Collectors.toMap(Stat::getUri, Stat::getHits));
+    }
+
+    private static Map<LocalDateTime, Long> hitsByBucket(List<TimelineStat> stats) {
+        return stats.stream()
+                .sorted(Comparator.comparing(TimelineStat::getBucket))
+                .collect(Collectors.toMap(TimelineStat::getBucket, TimelineStat::getHits));
+    }
+}
\ No newline at end of file
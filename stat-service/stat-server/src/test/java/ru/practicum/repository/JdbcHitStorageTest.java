@@ -0,0 +1,25 @@
+package ru.practicum.repository;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+/**
+ * Нужен PostgreSQL, поэтому запускается только с -Dspring.datasource.url=jdbc:postgresql://... .
+ * Схема создаётся при старте контекста, данные в базе тесты не трогают: каждый пишет свои app и URI.
+ */
+@SpringBootTest(properties = {
+        "stat-server.wal.dir=target/test-data/wal",
+        "stat-server.snapshot.enabled=false",
+        "stat-server.archive.dir=target/test-data/archive"
+})
+@EnabledIfSystemProperty(named = "spring.datasource.url", matches = "jdbc:postgresql:.*")
+class JdbcHitStorageTest extends HitStorageContractTest {
+    @Autowired
+    private JdbcHitStorage storage;
+
+    @Override
+    protected HitStorage storage() {
+        return storage;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,66 @@
+package ru.practicum.segment;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.practicum.model.Hit;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.repository.HitStorage;
+import ru.practicum.repository.HitStorageContractTest;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentHitStorageTest extends HitStorageContractTest {
+    @TempDir
+    Path dir;
+
+    private SegmentHitStorage storage;
+
+    @BeforeEach
+    void openStorage() throws IOException {
+        storage = open();
+    }
+
+    @AfterEach
+    void closeStorage() throws IOException {
+        storage.close();
+    }
+
+    @Override
+    protected HitStorage storage() {
+        return storage;
+    }
+
+    @Test
+    void failedBatchIsNotVisibleAfterReopen() throws IOException {
+        LocalDateTime time = LocalDateTime.of(2024, 3, 1, 12, 0);
+        assertThrows(RuntimeException.class, () -> storage.saveAll(List.of(
+                hit("10.0.0.1", time),
+                hit("bad-ip", time))));
+        storage.saveAll(List.of(hit("10.0.0.2", time)));
+        storage.close();
+
+        storage = open();
+
+        assertEquals(1, storage.findLastHitId());
+        assertEquals(1L, storage.findStats(time, time, List.of("/reopen"), false, StatPrecision.EXACT).get(0)
+                .getHits());
+    }
+
+    private SegmentHitStorage open() throws IOException {
+        SegmentHitStorage opened = new SegmentHitStorage(dir.toString(), 1, 1);
+        opened.open();
+        return opened;
+    }
+
+    private static Hit hit(String ip, LocalDateTime timestamp) {
+        return Hit.builder().app("reopen").uri("/reopen").ip(ip).timestamp(timestamp).build();
+    }
+}
\ No newline at end of file
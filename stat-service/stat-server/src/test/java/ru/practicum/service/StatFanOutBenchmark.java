@@ -0,0 +1,121 @@
+package ru.practicum.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import ru.practicum.model.Hit;
+import ru.practicum.model.StatPrecision;
+import ru.practicum.repository.HitStorage;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Время /stats через {@link StatFanOut} в зависимости от ширины диапазона и числа потоков (1 — без деления
+ * на части). Hit'ы за год пишутся через {@link HitStorage} в отдельную схему stat_fanout_benchmark, которая
+ * удаляется после прогона. Для каждой ширины берётся медиана из нескольких запросов после прогрева.
+ * <p>
+ * Не входит в обычный прогон тестов, запуск:
+ * <pre>
+ * mvn -pl stat-service/stat-server -am test -Dtest=StatFanOutBenchmark -Dsurefire.failIfNoSpecifiedTests=false \
+ *     -Dbenchmark.url=jdbc:postgresql://localhost:5432/postgres -Dbenchmark.hits=1000000 \
+ *     -Dbenchmark.parallelism=1,2,4,8
+ * </pre>
+ */
+@Slf4j
+@SpringBootTest(properties = {
+        "spring.datasource.url=${benchmark.url:jdbc:postgresql://localhost:5432/postgres}"
+                + "?currentSchema=" + StatFanOutBenchmark.SCHEMA,
+        "spring.datasource.username=${benchmark.username:root}",
+        "spring.datasource.password=${benchmark.password:root}",
+        "spring.datasource.hikari.connection-init-sql=CREATE SCHEMA IF NOT EXISTS " + StatFanOutBenchmark.SCHEMA,
+        "stat-server.wal.dir=target/benchmark-data/wal",
+        "stat-server.snapshot.enabled=false",
+        "stat-server.archive.dir=target/benchmark-data/archive",
+        "logging.level.org.springframework.transaction.interceptor=INFO",
+        "logging.level.org.springframework.orm.jpa.JpaTransactionManager=INFO"
+})
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class StatFanOutBenchmark {
+    static final String SCHEMA = "stat_fanout_benchmark";
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final int[] WIDTHS_DAYS = {7, 30, 90, 365};
+    private static final int BATCH_SIZE = 500;
+    private static final int URIS = 1000;
+    private static final int RUNS = 5;
+
+    @Autowired
+    private HitStorage hitStorage;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterAll
+    void dropSchema() {
+        jdbcTemplate.execute("DROP SCHEMA " + SCHEMA + " CASCADE");
+    }
+
+    @Test
+    void compareSliceParallelism() {
+        generate(Integer.getInteger("benchmark.hits", 1_000_000));
+        int[] parallelism = Arrays.stream(System.getProperty("benchmark.parallelism", "1,2,4,8").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        List<String> results = new ArrayList<>();
+        for (boolean unique : new boolean[]{false, true}) {
+            for (int days : WIDTHS_DAYS) {
+                // начало не на границе суток, чтобы у диапазона были сырые края
+                LocalDateTime start = START.plusHours(7);
+                LocalDateTime end = start.plusDays(days);
+                StringBuilder row = new StringBuilder(String.format("unique=%-5s %3d сут.", unique, days));
+                double single = 0;
+                for (int threads : parallelism) {
+                    StatFanOut fanOut = new StatFanOut(hitStorage, 30, 16, 500, threads);
+                    try {
+                        double millis = median(fanOut, start, end, unique);
+                        single = threads == parallelism[0] ? millis : single;
+                        row.append(String.format("  %d пот.: %8.1f мс (x%.2f)", threads, millis, single / millis));
+                    } finally {
+                        fanOut.shutdown();
+                    }
+                }
+                results.add(row.toString());
+            }
+        }
+        log.info("Время /stats по ширине диапазона и числу потоков:\n{}", String.join("\n", results));
+    }
+
+    private static double median(StatFanOut fanOut, LocalDateTime start, LocalDateTime end, boolean unique) {
+        fanOut.findStats(start, end, null, unique, StatPrecision.EXACT);
+        double[] millis = new double[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            long started = System.nanoTime();
+            fanOut.findStats(start, end, null, unique, StatPrecision.EXACT);
+            millis[i] = (System.nanoTime() - started) / 1e6;
+        }
+        Arrays.sort(millis);
+        return millis[RUNS / 2];
+    }
+
+    private void generate(int size) {
+        Random random = new Random(size);
+        List<Hit> batch = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < size; i++) {
+            batch.add(Hit.builder()
+                    .app("ewm-main-service")
+                    .uri("/events/" + random.nextInt(URIS))
+                    .ip("10." + random.nextInt(256) + "." + random.nextInt(256) + "." + random.nextInt(256))
+                    .timestamp(START.plusSeconds(random.nextInt(365 * 24 * 3600)))
+                    .build());
+            if (batch.size() == BATCH_SIZE || i == size - 1) {
+                hitStorage.saveAll(batch);
+                batch.clear();
+            }
+        }
+    }
+}
\ No newline at end of file
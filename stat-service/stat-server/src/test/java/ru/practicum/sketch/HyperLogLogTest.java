@@ -0,0 +1,64 @@
+package ru.practicum.sketch;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import ru.practicum.mapper.IpMapper;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HyperLogLogTest {
+    private static final int DISTINCT_IPS = 100_000;
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, HyperLogLog.DEFAULT_PRECISION, 14})
+    void estimateIsWithinThreeSigma(int precision) {
+        HyperLogLog sketch = new HyperLogLog(precision);
+        for (int i = 0; i < DISTINCT_IPS; i++) {
+            addIp(sketch, ipOf(i));
+            // повторы не должны менять оценку
+            addIp(sketch, ipOf(i / 2));
+        }
+
+        assertWithinThreeSigma(precision, sketch.estimate());
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10, HyperLogLog.DEFAULT_PRECISION, 14})
+    void mergedSketchEqualsSketchOfUnion(int precision) {
+        HyperLogLog all = new HyperLogLog(precision);
+        HyperLogLog even = new HyperLogLog(precision);
+        HyperLogLog odd = new HyperLogLog(precision);
+        for (int i = 0; i < DISTINCT_IPS; i++) {
+            addIp(all, ipOf(i));
+            addIp(i % 2 == 0 ? even : odd, ipOf(i));
+        }
+
+        HyperLogLog merged = HyperLogLog.fromBytes(even.toBytes()).merge(odd);
+
+        assertArrayEquals(all.toBytes(), merged.toBytes());
+        assertWithinThreeSigma(precision, merged.estimate());
+    }
+
+    private static void assertWithinThreeSigma(int precision, long estimate) {
+        double sigma = 1.04 / Math.sqrt(1 << precision);
+        double error = Math.abs(estimate - DISTINCT_IPS) / (double) DISTINCT_IPS;
+        assertTrue(error <= 3 * sigma, "Оценка " + estimate + " при точности " + precision + ": относительная " +
+                "ошибка " + error + " больше 3σ = " + 3 * sigma);
+    }
+
+    // половина адресов IPv4, половина IPv6, как в реальном трафике
+    private static String ipOf(int i) {
+        if (i % 2 == 0) {
+            return "10." + (i >>> 16 & 0xff) + "." + (i >>> 8 & 0xff) + "." + (i & 0xff);
+        }
+        return "2001:db8::" + Integer.toHexString(i >>> 16) + ":" + Integer.toHexString(i & 0xffff);
+    }
+
+    private static void addIp(HyperLogLog sketch, String ip) {
+        ByteBuffer bytes = ByteBuffer.wrap(IpMapper.toBytes(ip));
+        sketch.addHash(HyperLogLog.hash(bytes.getLong(), bytes.getLong()));
+    }
+}
\ No newline at end of file